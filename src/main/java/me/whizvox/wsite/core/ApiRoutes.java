@@ -1,5 +1,8 @@
 package me.whizvox.wsite.core;
 
+import ch.qos.logback.classic.Level;
+import me.whizvox.wsite.database.Database;
+import me.whizvox.wsite.database.Keyset;
 import me.whizvox.wsite.database.Page;
 import me.whizvox.wsite.database.PageRepository;
 import me.whizvox.wsite.database.User;
@@ -9,15 +12,19 @@ import spark.*;
 
 import javax.servlet.MultipartConfigElement;
 import javax.servlet.ServletException;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.*;
 import java.nio.Buffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -145,6 +152,18 @@ public class ApiRoutes {
     if (params.hasKey(KEY_DATABASE_URL)) {
       cfg.put(KEY_DATABASE_URL, HttpUtils.getString(params, KEY_DATABASE_URL));
     }
+    if (params.hasKey(KEY_DATABASE_DIALECT)) {
+      String dialect = HttpUtils.getString(params, KEY_DATABASE_DIALECT);
+      // left empty, it's told from the database URL
+      if (Utils.isNullOrEmpty(dialect)) {
+        cfg.put(KEY_DATABASE_DIALECT, "");
+      } else {
+        if (Database.parseDialect(dialect) == null) {
+          haltInvalidRequest(WsiteResult.CONFIG_INVALID_DATABASE_DIALECT);
+        }
+        cfg.put(KEY_DATABASE_DIALECT, dialect.trim().toUpperCase());
+      }
+    }
     if (params.hasKey(KEY_DATABASE_USERNAME)) {
       cfg.put(KEY_DATABASE_USERNAME, HttpUtils.getString(params, KEY_DATABASE_USERNAME));
     }
@@ -156,6 +175,62 @@ public class ApiRoutes {
           Utils.parseProperties(HttpUtils.getString(params, KEY_DATABASE_PROPERTIES))
       );
     }
+    if (params.hasKey(KEY_DATABASE_POOL_MIN_SIZE)) {
+      int size = HttpUtils.getInt(params, KEY_DATABASE_POOL_MIN_SIZE, -1);
+      if (size < 0) {
+        haltInvalidRequest(WsiteResult.CONFIG_INVALID_DATABASE_POOL);
+      }
+      cfg.put(KEY_DATABASE_POOL_MIN_SIZE, size);
+    }
+    if (params.hasKey(KEY_DATABASE_POOL_MAX_SIZE)) {
+      int size = HttpUtils.getInt(params, KEY_DATABASE_POOL_MAX_SIZE, -1);
+      if (size < 1) {
+        haltInvalidRequest(WsiteResult.CONFIG_INVALID_DATABASE_POOL);
+      }
+      cfg.put(KEY_DATABASE_POOL_MAX_SIZE, size);
+    }
+    if (params.hasKey(KEY_DATABASE_POOL_TIMEOUT)) {
+      int timeout = HttpUtils.getInt(params, KEY_DATABASE_POOL_TIMEOUT, -1);
+      if (timeout < 0) {
+        haltInvalidRequest(WsiteResult.CONFIG_INVALID_DATABASE_POOL);
+      }
+      cfg.put(KEY_DATABASE_POOL_TIMEOUT, timeout);
+    }
+    if (params.hasKey(KEY_DATABASE_SQLITE_SYNCHRONOUS)) {
+      String level = HttpUtils.getString(params, KEY_DATABASE_SQLITE_SYNCHRONOUS);
+      if (!Database.SqliteSettings.isValidSynchronousLevel(level)) {
+        haltInvalidRequest(WsiteResult.CONFIG_INVALID_DATABASE_SQLITE);
+      }
+      cfg.put(KEY_DATABASE_SQLITE_SYNCHRONOUS, level.toUpperCase());
+    }
+    if (params.hasKey(KEY_DATABASE_SQLITE_CACHE_SIZE)) {
+      int size = HttpUtils.getInt(params, KEY_DATABASE_SQLITE_CACHE_SIZE, -1);
+      if (size < 0) {
+        haltInvalidRequest(WsiteResult.CONFIG_INVALID_DATABASE_SQLITE);
+      }
+      cfg.put(KEY_DATABASE_SQLITE_CACHE_SIZE, size);
+    }
+    if (params.hasKey(KEY_DATABASE_SQLITE_MMAP_SIZE)) {
+      int size = HttpUtils.getInt(params, KEY_DATABASE_SQLITE_MMAP_SIZE, -1);
+      if (size < 0) {
+        haltInvalidRequest(WsiteResult.CONFIG_INVALID_DATABASE_SQLITE);
+      }
+      cfg.put(KEY_DATABASE_SQLITE_MMAP_SIZE, size);
+    }
+    if (params.hasKey(KEY_DATABASE_WRITE_BATCH_SIZE)) {
+      int size = HttpUtils.getInt(params, KEY_DATABASE_WRITE_BATCH_SIZE, -1);
+      if (size < 0) {
+        haltInvalidRequest(WsiteResult.CONFIG_INVALID_DATABASE_SQLITE);
+      }
+      cfg.put(KEY_DATABASE_WRITE_BATCH_SIZE, size);
+    }
+    if (params.hasKey(KEY_DATABASE_SLOW_QUERY_THRESHOLD)) {
+      int threshold = HttpUtils.getInt(params, KEY_DATABASE_SLOW_QUERY_THRESHOLD, -1);
+      if (threshold < 0) {
+        haltInvalidRequest(WsiteResult.CONFIG_INVALID_DATABASE_SLOW_QUERY_THRESHOLD);
+      }
+      cfg.put(KEY_DATABASE_SLOW_QUERY_THRESHOLD, threshold);
+    }
     if (params.hasKey(KEY_ENABLE_SSL)) {
       cfg.put(KEY_ENABLE_SSL, HttpUtils.getBool(params, KEY_ENABLE_SSL));
     }
@@ -253,7 +328,12 @@ public class ApiRoutes {
     public Object handle(Request request, Response response) throws Exception {
       try {
         response.header("Content-Type", "application/json");
-        return JsonUtils.toJson(handle_do(request, response, wsite));
+        Object result = handle_do(request, response, wsite);
+        // routes that stream their own body have already committed the response
+        if (response.raw().isCommitted()) {
+          return "";
+        }
+        return JsonUtils.toJson(result);
       } catch (HaltException e) {
         throw e;
       } catch (Exception e) {
@@ -328,11 +408,19 @@ public class ApiRoutes {
       int page = HttpUtils.getInt(params, "page");
       String orderingSchemeStr = HttpUtils.getString(params, "order", "path");
       boolean descending = HttpUtils.getBool(params, "desc", false);
+      // a cursor from a previous page takes precedence over the page number
+      String after = HttpUtils.getString(params, "after");
+      String before = HttpUtils.getString(params, "before");
       PageRepository.OrderingScheme orderingScheme = PageRepository.OrderingScheme.fromString(orderingSchemeStr);
       if (orderingScheme == null) {
         orderingScheme = PageRepository.OrderingScheme.PATH;
       }
-      return wsite.listPages(limit, page, orderingScheme, descending);
+      try {
+        return wsite.listPages(limit, page, after, before, orderingScheme, descending);
+      } catch (IllegalArgumentException e) {
+        haltInvalidRequest(WsiteResult.PAGE_INVALID_CURSOR);
+        return null;
+      }
     }
   }
 
@@ -497,6 +585,7 @@ public class ApiRoutes {
       public String email;
       public String created;
       public boolean operator;
+      public String cursor;
       public UserInfo(String id, String username, String email, String created, boolean operator) {
         this.id = id;
         this.username = username;
@@ -524,15 +613,28 @@ public class ApiRoutes {
       if (page < 0) {
         page = 0;
       }
+      // a cursor from a previous page takes precedence over the page number
+      String after = HttpUtils.getString(params, "after");
+      String before = HttpUtils.getString(params, "before");
       UserRepository.OrderingScheme orderingScheme = UserRepository.OrderingScheme.fromString(orderingSchemeStr);
       if (orderingScheme == null) {
         orderingScheme = UserRepository.OrderingScheme.USERNAME;
       }
-      List<User> users = wsite.getUsers(limit, page, orderingScheme, descending);
+      List<Keyset.Row<User>> users;
+      try {
+        users = wsite.getUsers(limit, page, after, before, orderingScheme, descending);
+      } catch (IllegalArgumentException e) {
+        haltInvalidRequest(WsiteResult.USER_INVALID_CURSOR);
+        return null;
+      }
       List<UserInfo> userInfos = new ArrayList<>(users.size());
-      users.forEach(user -> userInfos.add(new UserInfo(user.id.toString(), user.username, user.emailAddress,
-          Utils.formatFileSafeInstant(user.whenCreated), user.operator))
-      );
+      users.forEach(row -> {
+        User user = row.value;
+        UserInfo userInfo = new UserInfo(user.id.toString(), user.username, user.emailAddress,
+            Utils.formatFileSafeInstant(user.whenCreated), user.operator);
+        userInfo.cursor = row.cursor;
+        userInfos.add(userInfo);
+      });
       return userInfos;
     }
   }
@@ -736,6 +838,131 @@ public class ApiRoutes {
     }
   }
 
+  public static class PageExportRoute extends WsiteApiRoute {
+    public PageExportRoute(WsiteService wsite) {
+      super(wsite);
+    }
+    @Override
+    protected Object handle_do(Request request, Response response, WsiteService wsite) throws Exception {
+      checkPermission(wsite, request);
+      boolean full = HttpUtils.getBool(request.queryMap(), "full", false);
+      return wsite.exportPages(full);
+    }
+  }
+
+  public static class PageClearExportRoute extends WsiteApiRoute {
+    public PageClearExportRoute(WsiteService wsite) {
+      super(wsite);
+    }
+    @Override
+    protected Object handle_do(Request request, Response response, WsiteService wsite) throws Exception {
+      checkPermission(wsite, request);
+      wsite.clearPageExport();
+      return formResult(WsiteResult.SUCCESS);
+    }
+  }
+
+  public static class LogSearchRoute extends WsiteApiRoute {
+    public LogSearchRoute(WsiteService wsite) {
+      super(wsite);
+    }
+    // accepts either a date or a date and time, both in local time
+    private static long getTime(QueryParamsMap params, String key, boolean endOfDay, long defaultValue) {
+      String str = HttpUtils.getString(params, key);
+      if (str == null || str.isEmpty()) {
+        return defaultValue;
+      }
+      try {
+        LocalDateTime time;
+        if (str.contains("T")) {
+          time = LocalDateTime.parse(str);
+        } else {
+          LocalDate date = LocalDate.parse(str);
+          time = endOfDay ? date.atTime(LocalTime.MAX) : date.atStartOfDay();
+        }
+        return time.toEpochSecond(ZoneOffset.UTC);
+      } catch (DateTimeParseException e) {
+        haltInvalidRequest(WsiteResult.LOG_INVALID_TIME);
+        return defaultValue;
+      }
+    }
+    @Override
+    protected Object handle_do(Request request, Response response, WsiteService wsite) throws Exception {
+      checkPermission(wsite, request);
+      QueryParamsMap params = request.queryMap();
+      LogSearcher.Query query = new LogSearcher.Query();
+      query.from = getTime(params, "from", false, query.from);
+      query.to = getTime(params, "to", true, query.to);
+      String level = HttpUtils.getString(params, "level");
+      if (level != null && !level.isEmpty()) {
+        Level parsed = Level.toLevel(level, null);
+        if (parsed == null) {
+          haltInvalidRequest(WsiteResult.LOG_INVALID_LEVEL);
+        }
+        query.minLevel = parsed.toInt();
+      }
+      query.logger = HttpUtils.getString(params, "logger");
+      query.text = HttpUtils.getString(params, "text");
+      query.limit = Math.max(1, Math.min(Reference.LOG_SEARCH_MAX_LIMIT,
+          HttpUtils.getInt(params, "limit", Reference.LOG_SEARCH_DEFAULT_LIMIT)));
+      // one JSON object per line, flushed as they're found, with a summary at the end
+      HttpServletResponse rawResponse = response.raw();
+      rawResponse.setContentType("application/x-ndjson;charset=utf-8");
+      Writer writer = rawResponse.getWriter();
+      int[] pending = {0};
+      LogSearcher.Summary summary = wsite.searchLogs(query, match -> {
+        try {
+          writer.write(JsonUtils.toJson(match));
+          writer.write('\n');
+          if (++pending[0] >= Reference.LOG_SEARCH_FLUSH_INTERVAL) {
+            pending[0] = 0;
+            rawResponse.flushBuffer();
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+      writer.write(JsonUtils.toJson(summary));
+      writer.write('\n');
+      rawResponse.flushBuffer();
+      return null;
+    }
+  }
+
+  public static class DatabaseStatsRoute extends WsiteApiRoute {
+    public DatabaseStatsRoute(WsiteService wsite) {
+      super(wsite);
+    }
+    @Override
+    protected Object handle_do(Request request, Response response, WsiteService wsite) throws Exception {
+      checkPermission(wsite, request);
+      return wsite.getDatabaseStats();
+    }
+  }
+
+  public static class DatabaseQueriesRoute extends WsiteApiRoute {
+    public DatabaseQueriesRoute(WsiteService wsite) {
+      super(wsite);
+    }
+    @Override
+    protected Object handle_do(Request request, Response response, WsiteService wsite) throws Exception {
+      checkPermission(wsite, request);
+      return wsite.getQueryStats();
+    }
+  }
+
+  public static class DatabaseClearQueriesRoute extends WsiteApiRoute {
+    public DatabaseClearQueriesRoute(WsiteService wsite) {
+      super(wsite);
+    }
+    @Override
+    protected Object handle_do(Request request, Response response, WsiteService wsite) throws Exception {
+      checkPermission(wsite, request);
+      wsite.clearQueryStats();
+      return formResult(WsiteResult.SUCCESS);
+    }
+  }
+
   public static class UserExistsRoute extends WsiteApiRoute {
     public UserExistsRoute(WsiteService wsite) {
       super(wsite);
@@ -0,0 +1,118 @@
+package me.whizvox.wsite.core;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hot in-memory data that is written out when the service is destroyed and read back in when it's created again, so
+ * that it doesn't start off cold after a shutdown.
+ */
+public class CacheSnapshot {
+
+  private static final int
+      MAGIC = 0x57534E50, // "WSNP"
+      FORMAT_VERSION = 2;
+
+  // anything the snapshotted data depends on. a snapshot with a different stamp is discarded
+  public String stamp;
+  // least recently used first
+  public List<PageEntry> pages;
+  public List<LoginEntry> logins;
+
+  public CacheSnapshot(String stamp) {
+    this.stamp = stamp;
+    pages = new ArrayList<>();
+    logins = new ArrayList<>();
+  }
+
+  public void write(Path file) throws IOException {
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      writeString(out, stamp);
+      out.writeInt(pages.size());
+      for (PageEntry page : pages) {
+        writeString(out, page.path);
+        writeString(out, page.etag);
+        out.writeLong(page.lastModified);
+        out.writeInt(page.gzipped.length);
+        out.write(page.gzipped);
+      }
+      out.writeInt(logins.size());
+      for (LoginEntry login : logins) {
+        writeString(out, login.token);
+        writeString(out, login.userId);
+        out.writeLong(login.expirationDate);
+      }
+    }
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Returns null if the file doesn't exist or was written by an incompatible version.
+   */
+  public static CacheSnapshot read(Path file) throws IOException {
+    if (!Files.exists(file)) {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+        return null;
+      }
+      CacheSnapshot snapshot = new CacheSnapshot(readString(in));
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        PageEntry page = new PageEntry();
+        page.path = readString(in);
+        page.etag = readString(in);
+        page.lastModified = in.readLong();
+        page.gzipped = new byte[in.readInt()];
+        in.readFully(page.gzipped);
+        snapshot.pages.add(page);
+      }
+      count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        LoginEntry login = new LoginEntry();
+        login.token = readString(in);
+        login.userId = readString(in);
+        login.expirationDate = in.readLong();
+        snapshot.logins.add(login);
+      }
+      return snapshot;
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String str) throws IOException {
+    byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  // only the compressed body is kept, the plain one is restored from it
+  public static class PageEntry {
+    public String path;
+    public String etag;
+    public long lastModified;
+    public byte[] gzipped;
+  }
+
+  // users aren't kept, they're looked up again when the snapshot is loaded
+  public static class LoginEntry {
+    public String token;
+    public String userId;
+    public long expirationDate;
+  }
+
+}
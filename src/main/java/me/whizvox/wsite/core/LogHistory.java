@@ -0,0 +1,63 @@
+package me.whizvox.wsite.core;
+
+import java.util.List;
+
+/**
+ * Fixed-size ring of the most recently logged events, replayed to console sessions when they connect. Events are kept
+ * in preallocated arrays rather than as objects, so recording one doesn't allocate anything beyond its message.
+ */
+public class LogHistory {
+
+  private final long[] sequences;
+  private final int[] levels;
+  private final String[] messages;
+  // index of the next slot to be written to
+  private int head;
+  private int count;
+
+  public LogHistory(int capacity) {
+    sequences = new long[capacity];
+    levels = new int[capacity];
+    messages = new String[capacity];
+    head = 0;
+    count = 0;
+  }
+
+  public synchronized void add(long sequence, int level, String message) {
+    sequences[head] = sequence;
+    levels[head] = level;
+    messages[head] = message;
+    head = (head + 1) % messages.length;
+    if (count < messages.length) {
+      count++;
+    }
+  }
+
+  /**
+   * Adds every event after a sequence number and of at least a certain level to a list, oldest first.
+   * @return The sequence number of the most recent event, whether or not it was added, or the one that was passed in
+   * if there are no events
+   */
+  public synchronized long copySince(long since, int minLevel, List<WsiteLogbackAppender.LogEvent> out) {
+    long latest = since;
+    for (int i = 0; i < count; i++) {
+      int index = (head - count + i + messages.length) % messages.length;
+      if (sequences[index] > since) {
+        if (levels[index] >= minLevel) {
+          out.add(new WsiteLogbackAppender.LogEvent(sequences[index], levels[index], messages[index]));
+        }
+        latest = sequences[index];
+      }
+    }
+    return latest;
+  }
+
+  public synchronized void clear() {
+    head = 0;
+    count = 0;
+    for (int i = 0; i < messages.length; i++) {
+      messages[i] = null;
+    }
+  }
+
+}
@@ -0,0 +1,521 @@
+package me.whizvox.wsite.core;
+
+import ch.qos.logback.classic.Level;
+import me.whizvox.wsite.util.IOUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Searches the log files written by logback. Every file gets a sparse index mapping entry timestamps to byte offsets,
+ * which is saved alongside the others and only extended as the file grows, so that a query for a time range only maps
+ * and scans the parts of the files that can actually contain matches.
+ */
+public class LogSearcher {
+
+  private static final int
+      INDEX_MAGIC = 0x57534C49, // "WSLI"
+      INDEX_VERSION = 1;
+  private static final String
+      LOG_EXTENSION = ".log",
+      INDEX_EXTENSION = ".idx";
+  // every entry starts with "yyyy/MM/dd-kk:mm:ss ", where the hour goes from 1 to 24
+  private static final int TIMESTAMP_LENGTH = 20;
+  // entries are written after their timestamp is taken, so they can be slightly out of order
+  private static final long CLOCK_SLACK = 5;
+
+  private final Path logsDir;
+  private final Path indexDir;
+  private final Map<String, FileIndex> indexes;
+
+  public LogSearcher(Path logsDir, Path indexDir) {
+    this.logsDir = logsDir;
+    this.indexDir = indexDir;
+    indexes = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Indexes any log file that's new or has grown since it was last indexed, and drops the indexes of ones that have
+   * since been deleted.
+   * @return The indexes of every log file, oldest first
+   */
+  public synchronized List<FileIndex> updateIndexes() throws IOException {
+    List<FileIndex> result = new ArrayList<>();
+    Set<String> existing = new HashSet<>();
+    if (Files.isDirectory(logsDir)) {
+      IOUtils.mkdirs(indexDir);
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(logsDir, "*" + LOG_EXTENSION)) {
+        for (Path file : stream) {
+          String name = file.getFileName().toString();
+          existing.add(name);
+          result.add(updateIndex(name, file));
+        }
+      }
+    }
+    indexes.keySet().removeIf(name -> !existing.contains(name));
+    if (Files.isDirectory(indexDir)) {
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(indexDir, "*" + INDEX_EXTENSION)) {
+        for (Path file : stream) {
+          String name = file.getFileName().toString();
+          if (!existing.contains(name.substring(0, name.length() - INDEX_EXTENSION.length()))) {
+            Files.deleteIfExists(file);
+          }
+        }
+      }
+    }
+    result.sort(Comparator.comparingLong((FileIndex index) -> index.firstTime).thenComparing(index -> index.name));
+    return result;
+  }
+
+  private FileIndex updateIndex(String name, Path file) throws IOException {
+    long size = Files.size(file);
+    FileIndex index = indexes.get(name);
+    if (index == null) {
+      index = readIndex(name);
+    }
+    if (index != null && index.length == size) {
+      indexes.put(name, index);
+      return index;
+    }
+    // log files are only ever appended to, so a file that shrank has been replaced by a different one
+    FileIndex updated = index == null || size < index.length ? new FileIndex(name) : index.copy();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      updated.length = scan(channel, updated.length, size, (buf, bufOffset, start, end, time) -> {
+        long offset = bufOffset + start;
+        if (updated.entries == 0) {
+          updated.firstTime = time;
+        }
+        updated.lastTime = Math.max(updated.lastTime, time);
+        updated.entries++;
+        if (offset >= updated.nextSample) {
+          updated.addSample(offset, time);
+          updated.nextSample = offset + Reference.LOG_INDEX_INTERVAL;
+        }
+        return true;
+      });
+    }
+    writeIndex(updated);
+    indexes.put(name, updated);
+    return updated;
+  }
+
+  public Summary search(Query query, Consumer<Match> consumer) throws IOException {
+    long startTime = System.currentTimeMillis();
+    Summary summary = new Summary();
+    byte[] text = query.text == null || query.text.isEmpty() ? null :
+        query.text.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+    byte[] logger = query.logger == null || query.logger.isEmpty() ? null :
+        query.logger.getBytes(StandardCharsets.UTF_8);
+    // reused for every entry, so that ones that don't match don't allocate anything
+    int[] header = new int[3];
+    for (FileIndex index : updateIndexes()) {
+      if (index.entries == 0 || index.lastTime < query.from - CLOCK_SLACK || index.firstTime > query.to + CLOCK_SLACK) {
+        continue;
+      }
+      summary.filesSearched++;
+      long start = index.findOffset(query.from - CLOCK_SLACK);
+      try (FileChannel channel = FileChannel.open(logsDir.resolve(index.name), StandardOpenOption.READ)) {
+        scan(channel, start, index.length, (buf, bufOffset, entryStart, entryEnd, time) -> {
+          if (time > query.to + CLOCK_SLACK) {
+            return false;
+          }
+          summary.bytesScanned += entryEnd - entryStart;
+          if (time < query.from || time > query.to) {
+            return true;
+          }
+          if (!parseHeader(buf, entryStart, entryEnd, header) ||
+              parseLevel(buf, header[0] + 2) < query.minLevel ||
+              (logger != null && !startsWith(buf, header[1] + 1, header[2], logger)) ||
+              (text != null && indexOfIgnoreCase(buf, entryStart, entryEnd, text) == -1)) {
+            return true;
+          }
+          Match match = createMatch(buf, entryStart, entryEnd, header);
+          match.file = index.name;
+          match.offset = bufOffset + entryStart;
+          consumer.accept(match);
+          if (++summary.matched >= query.limit) {
+            summary.truncated = true;
+            return false;
+          }
+          return true;
+        });
+      }
+      if (summary.truncated) {
+        break;
+      }
+    }
+    summary.millis = System.currentTimeMillis() - startTime;
+    return summary;
+  }
+
+  private interface EntryVisitor {
+    // start and end are positions in the buffer, which is mapped from the file starting at bufOffset
+    boolean visit(ByteBuffer buf, long bufOffset, int start, int end, long time) throws IOException;
+  }
+
+  /**
+   * Maps the file one region at a time and visits every entry that starts between two offsets. Lines that don't start
+   * with a timestamp (stack traces and the like) belong to the entry before them. An incomplete line at the end is left
+   * for the next scan, since it's most likely still being written.
+   * @return The offset right after the last complete line, or of the entry the visitor stopped at
+   */
+  private static long scan(FileChannel channel, long start, long end, EntryVisitor visitor) throws IOException {
+    long pos = start;
+    while (pos < end) {
+      long size = Math.min(end - pos, Reference.LOG_SEARCH_MAP_SIZE);
+      MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, size);
+      int limit = (int) size;
+      boolean last = pos + size == end;
+      int entryStart = -1;
+      long entryTime = -1;
+      int lineStart = 0;
+      while (lineStart < limit) {
+        int lineEnd = lineStart;
+        while (lineEnd < limit && buf.get(lineEnd) != '\n') {
+          lineEnd++;
+        }
+        if (lineEnd == limit) {
+          break;
+        }
+        long time = parseTime(buf, lineStart, lineEnd);
+        if (time != -1) {
+          if (entryStart != -1 && !visitor.visit(buf, pos, entryStart, lineStart, entryTime)) {
+            return pos + entryStart;
+          }
+          entryStart = lineStart;
+          entryTime = time;
+        }
+        lineStart = lineEnd + 1;
+      }
+      if (last || lineStart == 0) {
+        if (entryStart != -1 && !visitor.visit(buf, pos, entryStart, lineStart, entryTime)) {
+          return pos + entryStart;
+        }
+        if (last) {
+          return pos + lineStart;
+        }
+        // a single line that's bigger than a whole region is skipped entirely
+        pos += limit;
+      } else if (entryStart > 0) {
+        // the last entry may continue past this region, so the next one starts with it
+        pos += entryStart;
+      } else {
+        // an entry that's bigger than a whole region is cut off
+        if (entryStart == 0 && !visitor.visit(buf, pos, entryStart, lineStart, entryTime)) {
+          return pos;
+        }
+        pos += lineStart;
+      }
+    }
+    return pos;
+  }
+
+  private static int parseDigits(ByteBuffer buf, int pos, int count) {
+    int value = 0;
+    for (int i = 0; i < count; i++) {
+      int digit = buf.get(pos + i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  /**
+   * @return The number of seconds since the epoch in local time, or -1 if the line doesn't start with a timestamp
+   */
+  private static long parseTime(ByteBuffer buf, int start, int end) {
+    if (end - start < TIMESTAMP_LENGTH || buf.get(start + 4) != '/' || buf.get(start + 7) != '/' ||
+        buf.get(start + 10) != '-' || buf.get(start + 13) != ':' || buf.get(start + 16) != ':' ||
+        buf.get(start + 19) != ' ') {
+      return -1;
+    }
+    int year = parseDigits(buf, start, 4);
+    int month = parseDigits(buf, start + 5, 2);
+    int day = parseDigits(buf, start + 8, 2);
+    int hour = parseDigits(buf, start + 11, 2);
+    int minute = parseDigits(buf, start + 14, 2);
+    int second = parseDigits(buf, start + 17, 2);
+    if (year == -1 || month == -1 || day == -1 || hour == -1 || minute == -1 || second == -1) {
+      return -1;
+    }
+    try {
+      return LocalDate.of(year, month, day).toEpochDay() * 86400 + (hour % 24) * 3600 + minute * 60 + second;
+    } catch (DateTimeException e) {
+      return -1;
+    }
+  }
+
+  private static String decode(ByteBuffer buf, int start, int end) {
+    byte[] bytes = new byte[end - start];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = buf.get(start + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static int indexOf(ByteBuffer buf, int start, int end, String str) {
+    outer:
+    for (int i = start; i <= end - str.length(); i++) {
+      for (int j = 0; j < str.length(); j++) {
+        if (buf.get(i + j) != str.charAt(j)) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  // only folds ASCII characters, the needle must already be lowercase
+  private static int indexOfIgnoreCase(ByteBuffer buf, int start, int end, byte[] needle) {
+    outer:
+    for (int i = start; i <= end - needle.length; i++) {
+      for (int j = 0; j < needle.length; j++) {
+        byte b = buf.get(i + j);
+        if (b >= 'A' && b <= 'Z') {
+          b += 'a' - 'A';
+        }
+        if (b != needle[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  /**
+   * Finds where the parts of an entry's header end: "yyyy/MM/dd-kk:mm:ss [thread] LEVEL logger - message"
+   * @param header Filled with the positions of the end of the thread, level and logger, in that order
+   */
+  private static boolean parseHeader(ByteBuffer buf, int start, int end, int[] header) {
+    int pos = start + TIMESTAMP_LENGTH;
+    if (pos >= end || buf.get(pos) != '[') {
+      return false;
+    }
+    header[0] = indexOf(buf, pos, end, "] ");
+    if (header[0] == -1) {
+      return false;
+    }
+    header[1] = indexOf(buf, header[0] + 2, end, " ");
+    if (header[1] == -1) {
+      return false;
+    }
+    header[2] = indexOf(buf, header[1] + 1, end, " - ");
+    return header[2] != -1;
+  }
+
+  // logback's levels all start with a different letter
+  private static int parseLevel(ByteBuffer buf, int pos) {
+    switch (buf.get(pos)) {
+      case 'T':
+        return Level.TRACE_INT;
+      case 'D':
+        return Level.DEBUG_INT;
+      case 'I':
+        return Level.INFO_INT;
+      case 'W':
+        return Level.WARN_INT;
+      case 'E':
+        return Level.ERROR_INT;
+      default:
+        return Level.ALL_INT;
+    }
+  }
+
+  private static boolean startsWith(ByteBuffer buf, int start, int end, byte[] prefix) {
+    if (end - start < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (buf.get(start + i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static Match createMatch(ByteBuffer buf, int start, int end, int[] header) {
+    Match match = new Match();
+    match.time = decode(buf, start, start + TIMESTAMP_LENGTH - 1);
+    match.thread = decode(buf, start + TIMESTAMP_LENGTH + 1, header[0]);
+    match.level = decode(buf, header[0] + 2, header[1]);
+    match.logger = decode(buf, header[1] + 1, header[2]);
+    int textEnd = end;
+    while (textEnd > start && (buf.get(textEnd - 1) == '\n' || buf.get(textEnd - 1) == '\r')) {
+      textEnd--;
+    }
+    match.text = decode(buf, start, textEnd);
+    return match;
+  }
+
+  private FileIndex readIndex(String name) throws IOException {
+    Path file = indexDir.resolve(name + INDEX_EXTENSION);
+    if (!Files.exists(file)) {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+        return null;
+      }
+      FileIndex index = new FileIndex(name);
+      index.length = in.readLong();
+      index.entries = in.readLong();
+      index.firstTime = in.readLong();
+      index.lastTime = in.readLong();
+      index.nextSample = in.readLong();
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        index.addSample(in.readLong(), in.readLong());
+      }
+      return index;
+    } catch (EOFException e) {
+      return null;
+    }
+  }
+
+  private void writeIndex(FileIndex index) throws IOException {
+    Path file = indexDir.resolve(index.name + INDEX_EXTENSION);
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+      out.writeInt(INDEX_MAGIC);
+      out.writeInt(INDEX_VERSION);
+      out.writeLong(index.length);
+      out.writeLong(index.entries);
+      out.writeLong(index.firstTime);
+      out.writeLong(index.lastTime);
+      out.writeLong(index.nextSample);
+      out.writeInt(index.sampleCount);
+      for (int i = 0; i < index.sampleCount; i++) {
+        out.writeLong(index.sampleOffsets[i]);
+        out.writeLong(index.sampleTimes[i]);
+      }
+    }
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Samples the offset and time of an entry every {@link Reference#LOG_INDEX_INTERVAL} bytes or so. Times are in
+   * seconds since the epoch, but in local time since that's what the files are written in.
+   */
+  public static class FileIndex {
+    public final String name;
+    // how much of the file has been indexed
+    public long length;
+    public long entries;
+    public long firstTime;
+    public long lastTime;
+    private long nextSample;
+    private long[] sampleOffsets;
+    private long[] sampleTimes;
+    private int sampleCount;
+    private FileIndex(String name) {
+      this.name = name;
+      length = 0;
+      entries = 0;
+      firstTime = -1;
+      lastTime = -1;
+      nextSample = 0;
+      sampleOffsets = new long[16];
+      sampleTimes = new long[16];
+      sampleCount = 0;
+    }
+    private FileIndex copy() {
+      FileIndex copy = new FileIndex(name);
+      copy.length = length;
+      copy.entries = entries;
+      copy.firstTime = firstTime;
+      copy.lastTime = lastTime;
+      copy.nextSample = nextSample;
+      copy.sampleOffsets = Arrays.copyOf(sampleOffsets, sampleOffsets.length);
+      copy.sampleTimes = Arrays.copyOf(sampleTimes, sampleTimes.length);
+      copy.sampleCount = sampleCount;
+      return copy;
+    }
+    private void addSample(long offset, long time) {
+      if (sampleCount == sampleOffsets.length) {
+        sampleOffsets = Arrays.copyOf(sampleOffsets, sampleCount * 2);
+        sampleTimes = Arrays.copyOf(sampleTimes, sampleCount * 2);
+      }
+      sampleOffsets[sampleCount] = offset;
+      sampleTimes[sampleCount] = time;
+      sampleCount++;
+    }
+    // the offset of the last sampled entry that's older than the given time
+    private long findOffset(long time) {
+      int low = 0;
+      int high = sampleCount - 1;
+      long offset = 0;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        if (sampleTimes[mid] < time) {
+          offset = sampleOffsets[mid];
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return offset;
+    }
+  }
+
+  public static class Query {
+    // in seconds since the epoch, local time
+    public long from;
+    public long to;
+    public int minLevel;
+    // matched against the start of the logger name
+    public String logger;
+    // matched case-insensitively against the whole entry
+    public String text;
+    public int limit;
+    public Query() {
+      from = Long.MIN_VALUE + CLOCK_SLACK;
+      to = Long.MAX_VALUE - CLOCK_SLACK;
+      minLevel = Level.ALL_INT;
+      logger = null;
+      text = null;
+      limit = Reference.LOG_SEARCH_DEFAULT_LIMIT;
+    }
+  }
+
+  public static class Match {
+    public String file;
+    public long offset;
+    public String time;
+    public String thread;
+    public String level;
+    public String logger;
+    public String text;
+  }
+
+  public static class Summary {
+    public boolean success;
+    public boolean done;
+    public int matched;
+    public int filesSearched;
+    public long bytesScanned;
+    public boolean truncated;
+    public long millis;
+    public Summary() {
+      success = true;
+      done = true;
+    }
+  }
+
+}
@@ -0,0 +1,114 @@
+package me.whizvox.wsite.core;
+
+import me.whizvox.wsite.database.Login;
+import me.whizvox.wsite.database.User;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps login tokens to their users, so that authenticating a request doesn't have to query the database. Entries never
+ * outlive their login, and are otherwise dropped after a while to bound how stale a cached user can get.
+ */
+public class LoginCache {
+
+  private final int capacity;
+  private final long ttlMillis;
+  private final Map<String, Entry> entries;
+  private long generation;
+
+  public LoginCache(int capacity, long ttlMillis) {
+    this.capacity = capacity;
+    this.ttlMillis = ttlMillis;
+    entries = new ConcurrentHashMap<>();
+    generation = 0;
+  }
+
+  public User get(String token) {
+    Entry entry = entries.get(token);
+    if (entry == null) {
+      return null;
+    }
+    if (System.currentTimeMillis() >= entry.expiresAt) {
+      entries.remove(token, entry);
+      return null;
+    }
+    return entry.user;
+  }
+
+  /**
+   * Must be grabbed before the login and its user are loaded from the database. Passing it to
+   * {@link #put(Login, User, long)} prevents a login that was deleted, or a user that was changed, while they were being
+   * loaded from being cached.
+   */
+  public synchronized long getGeneration() {
+    return generation;
+  }
+
+  public synchronized boolean put(Login login, User user, long generation) {
+    if (generation != this.generation) {
+      return false;
+    }
+    long expiresAt = Math.min(login.expirationDate.toEpochMilli(), System.currentTimeMillis() + ttlMillis);
+    if (entries.size() >= capacity && !entries.containsKey(login.token)) {
+      removeExpired();
+      // still full, so make room by dropping whatever comes first
+      Iterator<String> it = entries.keySet().iterator();
+      while (entries.size() >= capacity && it.hasNext()) {
+        it.next();
+        it.remove();
+      }
+    }
+    entries.put(login.token, new Entry(login, user, expiresAt));
+    return true;
+  }
+
+  public synchronized void invalidate(String token) {
+    generation++;
+    entries.remove(token);
+  }
+
+  public synchronized void invalidateUser(UUID userId) {
+    generation++;
+    entries.values().removeIf(entry -> entry.user.id.equals(userId));
+  }
+
+  public void removeExpired() {
+    long now = System.currentTimeMillis();
+    entries.values().removeIf(entry -> now >= entry.expiresAt);
+  }
+
+  public synchronized void clear() {
+    generation++;
+    entries.clear();
+  }
+
+  // only logins that haven't expired yet
+  public List<Login> getLogins() {
+    List<Login> logins = new ArrayList<>();
+    long now = System.currentTimeMillis();
+    entries.values().forEach(entry -> {
+      if (entry.login.expirationDate.isAfter(Instant.ofEpochMilli(now))) {
+        logins.add(entry.login);
+      }
+    });
+    return logins;
+  }
+
+  private static class Entry {
+    final Login login;
+    final User user;
+    final long expiresAt;
+    Entry(Login login, User user, long expiresAt) {
+      this.login = login;
+      this.user = user;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+}
@@ -0,0 +1,187 @@
+package me.whizvox.wsite.core;
+
+import me.whizvox.wsite.database.JooqRepository;
+import me.whizvox.wsite.database.Page;
+import me.whizvox.wsite.util.IOUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+public class PageCache {
+
+  private final long capacity;
+  private final LinkedHashMap<String, Entry> entries;
+  private final Map<String, CompletableFuture<Entry>> loading;
+  private long size;
+  private long generation;
+
+  public PageCache(long capacity) {
+    this.capacity = capacity;
+    // access-ordered, so the eldest entry is always the least recently used one
+    entries = new LinkedHashMap<>(16, 0.75f, true);
+    loading = new ConcurrentHashMap<>();
+    size = 0;
+    generation = 0;
+  }
+
+  /**
+   * @return Whether an entry of the size could be cached at all, even if every other entry was evicted for it
+   */
+  public boolean canHold(long size) {
+    return size <= capacity;
+  }
+
+  public synchronized Entry get(String path) {
+    return entries.get(normalizePath(path));
+  }
+
+  /**
+   * Must be grabbed before the page is loaded from the database. Passing it to {@link #put(String, Entry, long)}
+   * prevents a render that raced with an invalidation from being cached.
+   */
+  public synchronized long getGeneration() {
+    return generation;
+  }
+
+  public synchronized boolean put(String path, Entry entry, long generation) {
+    if (generation != this.generation || entry.isUncached() || entry.size() > capacity) {
+      return false;
+    }
+    Entry old = entries.put(normalizePath(path), entry);
+    if (old != null) {
+      size -= old.size();
+    }
+    size += entry.size();
+    Iterator<Entry> it = entries.values().iterator();
+    while (size > capacity && it.hasNext()) {
+      size -= it.next().size();
+      it.remove();
+    }
+    return true;
+  }
+
+  /**
+   * Returns the cached entry for a path, or loads it if there isn't one. Only one thread loads a given path at a time:
+   * any others that miss while it's loading wait for its result instead of loading it themselves. The loader may
+   * return null if the page doesn't exist, or {@link Entry#uncached(Page)}, neither of which is cached. An entry that
+   * turns out to be larger than the cache can hold is returned without being cached too.
+   */
+  public Entry load(String path, Supplier<Entry> loader) {
+    Entry entry = get(path);
+    if (entry != null) {
+      return entry;
+    }
+    String key = normalizePath(path);
+    CompletableFuture<Entry> future = new CompletableFuture<>();
+    CompletableFuture<Entry> existing = loading.putIfAbsent(key, future);
+    if (existing != null) {
+      try {
+        return existing.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw e;
+      }
+    }
+    try {
+      long generation = getGeneration();
+      // another thread may have finished loading it in the meantime
+      entry = get(path);
+      if (entry == null) {
+        entry = loader.get();
+        if (entry != null) {
+          put(path, entry, generation);
+        }
+      }
+      future.complete(entry);
+      return entry;
+    } catch (RuntimeException | Error e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      loading.remove(key, future);
+    }
+  }
+
+  public synchronized void invalidate(String path) {
+    generation++;
+    // a load that's already underway may have read the old version, so later requests shouldn't wait for it
+    loading.remove(normalizePath(path));
+    Entry old = entries.remove(normalizePath(path));
+    if (old != null) {
+      size -= old.size();
+    }
+  }
+
+  public synchronized void clear() {
+    generation++;
+    loading.clear();
+    entries.clear();
+    size = 0;
+  }
+
+  // least recently used first
+  public synchronized List<Map.Entry<String, Entry>> getEntries() {
+    return new ArrayList<>(entries.entrySet());
+  }
+
+  public synchronized int getCount() {
+    return entries.size();
+  }
+
+  public synchronized long getSize() {
+    return size;
+  }
+
+  // pages are cached by their path folded the way SQLite folds it, which is only ASCII characters. other databases may
+  // match a path that folds into a different key to the same page, which is why those pages aren't cached by it
+  public static String normalizePath(String path) {
+    return JooqRepository.foldCase(path);
+  }
+
+  public static class Entry {
+    public final String contents;
+    public final byte[] gzipped;
+    public final String etag;
+    public final Instant lastModified;
+    // only set for an entry that stands in for a page that isn't cached, which has nothing else set
+    public final Page page;
+    private Entry(String contents, byte[] gzipped, String etag, Instant lastModified, Page page) {
+      this.contents = contents;
+      this.gzipped = gzipped;
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.page = page;
+    }
+    public Entry(String contents, byte[] gzipped, String etag, Instant lastModified) {
+      this(contents, gzipped, etag, lastModified, null);
+    }
+    public Entry(String contents, String etag, Instant lastModified) {
+      // compressed up front so that serving a gzip-accepting client never has to deflate anything
+      this(contents, IOUtils.gzip(contents.getBytes(StandardCharsets.UTF_8)), etag, lastModified);
+    }
+    /**
+     * Hands a page that shouldn't be cached back to whoever asked for it, so that they can stream it instead.
+     */
+    public static Entry uncached(Page page) {
+      return new Entry(null, null, null, null, page);
+    }
+    public boolean isUncached() {
+      return page != null;
+    }
+    public long size() {
+      return contents.length() * 2L + gzipped.length;
+    }
+  }
+
+}
@@ -0,0 +1,247 @@
+package me.whizvox.wsite.core;
+
+import me.whizvox.wsite.database.Page;
+import me.whizvox.wsite.util.IOUtils;
+import me.whizvox.wsite.util.JsonUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Writes every page out as a static HTML file, along with a gzipped variant, so that they can be served without going
+ * through the database or the template engine. Exporting is incremental: only pages that were edited since the last
+ * export are rendered again, and files for pages that no longer exist are removed.
+ */
+public class PageExporter {
+
+  private static final String INDEX_FILE = "index.html";
+
+  // pages under these paths are shadowed by actual routes, so they're always served dynamically
+  private static final Set<String> RESERVED_PATHS = new HashSet<>(Arrays.asList(
+      "api", "control", "login", "logout", "profile"
+  ));
+
+  private final WsiteService wsite;
+  private final Path root;
+  private final Path manifestFile;
+  private final StaticFileCache fileCache;
+  private Manifest manifest;
+  private String indexPage;
+
+  public PageExporter(WsiteService wsite, Path root, Path compressedRoot, Path manifestFile) {
+    this.wsite = wsite;
+    this.root = root.toAbsolutePath().normalize();
+    this.manifestFile = manifestFile;
+    fileCache = new StaticFileCache(root, compressedRoot, "utf-8");
+    manifest = null;
+    indexPage = null;
+  }
+
+  public StaticFileCache getFileCache() {
+    return fileCache;
+  }
+
+  /**
+   * Exporting is enabled by the first export and stays enabled (across restarts) until {@link #clear()} is called.
+   */
+  public synchronized boolean isEnabled() {
+    return manifest != null;
+  }
+
+  /**
+   * Loads the manifest of the previous export. If anything that's baked into every exported page has changed since
+   * then, all exported files are removed right away so that none of them are served in the meantime.
+   */
+  public synchronized void load(String stamp, String indexPage) throws IOException {
+    this.indexPage = indexPage;
+    manifest = null;
+    if (!Files.exists(manifestFile)) {
+      return;
+    }
+    try (InputStream in = Files.newInputStream(manifestFile)) {
+      manifest = JsonUtils.readJson(in, Manifest.class);
+    }
+    if (!stamp.equals(manifest.stamp)) {
+      wsite.getLogger().info("Removing outdated static export...");
+      deleteFiles();
+      manifest = new Manifest(stamp);
+      saveManifest();
+    }
+  }
+
+  public synchronized Result export(String stamp, boolean full) throws IOException {
+    if (full || manifest == null || !stamp.equals(manifest.stamp)) {
+      deleteFiles();
+      manifest = new Manifest(stamp);
+    }
+    Result result = new Result();
+    Map<String, Instant> lastModified = wsite.getPageLastModified();
+    Set<String> existing = new HashSet<>();
+    List<String> outdated = new ArrayList<>();
+    lastModified.forEach((path, modified) -> {
+      String key = PageCache.normalizePath(path);
+      if (getExportPath(key) == null) {
+        return;
+      }
+      existing.add(key);
+      Long exported = manifest.pages.get(key);
+      if (exported == null || exported != modified.toEpochMilli() || !Files.exists(getExportPath(key))) {
+        outdated.add(path);
+      } else {
+        result.unchanged++;
+      }
+    });
+    for (String key : new ArrayList<>(manifest.pages.keySet())) {
+      if (!existing.contains(key)) {
+        deletePage(key);
+        result.removed++;
+      }
+    }
+    // pages are loaded in batches, but rendered and written in parallel
+    for (int i = 0; i < outdated.size(); i += Reference.PAGE_RENDER_BATCH_SIZE) {
+      List<Page> pages = outdated.subList(i, Math.min(outdated.size(), i + Reference.PAGE_RENDER_BATCH_SIZE))
+          .stream()
+          .map(wsite::getPage)
+          .filter(Objects::nonNull)
+          .collect(Collectors.toList());
+      try {
+        pages.parallelStream().forEach(page -> {
+          try {
+            writePage(page);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+      } catch (UncheckedIOException e) {
+        saveManifest();
+        throw e.getCause();
+      }
+      for (Page page : pages) {
+        manifest.pages.put(PageCache.normalizePath(page.path), Routes.PageGetRoute.getLastModified(page).toEpochMilli());
+        result.exported++;
+      }
+    }
+    saveManifest();
+    return result;
+  }
+
+  // removes the exported files of a page as soon as it's written to, so that they're never out of date
+  public synchronized void invalidate(String path) throws IOException {
+    if (manifest == null) {
+      return;
+    }
+    String key = PageCache.normalizePath(path);
+    if (manifest.pages.containsKey(key)) {
+      deletePage(key);
+      saveManifest();
+    }
+  }
+
+  public synchronized void clear() throws IOException {
+    deleteFiles();
+    manifest = null;
+    Files.deleteIfExists(manifestFile);
+  }
+
+  private Path getExportPath(String key) {
+    if (key.isEmpty() || RESERVED_PATHS.contains(key.split("/", 2)[0])) {
+      return null;
+    }
+    try {
+      Path path = root.resolve(key).normalize();
+      if (path.startsWith(root) && !path.equals(root)) {
+        return path.resolve(INDEX_FILE);
+      }
+    } catch (InvalidPathException ignored) {}
+    return null;
+  }
+
+  private boolean isIndexPage(String key) {
+    return indexPage != null && key.equals(PageCache.normalizePath(indexPage));
+  }
+
+  private void writePage(Page page) throws IOException {
+    String key = PageCache.normalizePath(page.path);
+    PageCache.Entry entry = Routes.PageGetRoute.createEntry(wsite, page);
+    byte[] contents = entry.contents.getBytes(StandardCharsets.UTF_8);
+    writeFile(getExportPath(key), contents, entry.gzipped);
+    if (isIndexPage(key)) {
+      writeFile(root.resolve(INDEX_FILE), contents, entry.gzipped);
+    }
+  }
+
+  private void writeFile(Path path, byte[] contents, byte[] gzipped) throws IOException {
+    IOUtils.mkdirs(path.getParent());
+    // written to a temporary file first so that a partially written file is never served
+    Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+    Files.write(temp, contents);
+    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    // the page has already been compressed, so there's no need to do it again
+    Path compressedPath = fileCache.getCompressedPath(path);
+    IOUtils.mkdirs(compressedPath.getParent());
+    try (OutputStream out = Files.newOutputStream(compressedPath)) {
+      out.write(gzipped);
+    }
+    fileCache.invalidate(path);
+  }
+
+  private void deletePage(String key) throws IOException {
+    manifest.pages.remove(key);
+    Path path = getExportPath(key);
+    if (path != null) {
+      deleteFile(path);
+    }
+    if (isIndexPage(key)) {
+      deleteFile(root.resolve(INDEX_FILE));
+    }
+    if (Files.exists(root)) {
+      IOUtils.cleanupEmptyDirectories(root);
+    }
+  }
+
+  private void deleteFile(Path path) throws IOException {
+    Files.deleteIfExists(path);
+    fileCache.removeCompressed(path);
+  }
+
+  private void deleteFiles() throws IOException {
+    IOUtils.deleteDirectory(root);
+    IOUtils.deleteDirectory(fileCache.getCompressedRoot());
+    fileCache.clear();
+  }
+
+  private void saveManifest() throws IOException {
+    try (OutputStream out = Files.newOutputStream(manifestFile)) {
+      JsonUtils.writeJson(out, manifest);
+    }
+  }
+
+  public static class Manifest {
+    public String stamp;
+    public Map<String, Long> pages;
+    public Manifest(String stamp) {
+      this.stamp = stamp;
+      pages = new HashMap<>();
+    }
+    public Manifest() {
+    }
+  }
+
+  public static class Result {
+    public boolean success;
+    public int exported;
+    public int removed;
+    public int unchanged;
+    public Result() {
+      success = true;
+    }
+  }
+
+}
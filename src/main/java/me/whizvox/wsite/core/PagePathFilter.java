@@ -0,0 +1,37 @@
+package me.whizvox.wsite.core;
+
+import me.whizvox.wsite.database.JooqRepository;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Every existing page path, kept in memory so that requests for pages that don't exist never have to reach the
+ * database. Paths are folded loosely rather than the way the database folds them, which depends on the database: a
+ * path it would match is never turned away, while one that only looks like an existing path is looked up anyway.
+ */
+public class PagePathFilter {
+
+  // how many existing paths fold into each key, since more than one can
+  private final Map<String, Integer> keys;
+
+  public PagePathFilter(Collection<String> paths) {
+    keys = new ConcurrentHashMap<>();
+    paths.forEach(this::add);
+  }
+
+  public void add(String path) {
+    keys.merge(JooqRepository.foldCaseLoosely(path), 1, Integer::sum);
+  }
+
+  // has to be the path as it was added, not just one that's equal to it ignoring case
+  public void remove(String path) {
+    keys.computeIfPresent(JooqRepository.foldCaseLoosely(path), (key, count) -> count > 1 ? count - 1 : null);
+  }
+
+  public boolean mightContain(String path) {
+    return keys.containsKey(JooqRepository.foldCaseLoosely(path));
+  }
+
+}
@@ -0,0 +1,51 @@
+package me.whizvox.wsite.core;
+
+import me.whizvox.wsite.database.Page;
+import me.whizvox.wsite.util.Utils;
+
+public class PageRenderer {
+
+  // bump whenever renderContents produces different output, so that stored renders are redone
+  public static final int VERSION = 1;
+
+  private PageRenderer() {}
+
+  public static String renderContents(Page page) {
+    switch (page.syntax) {
+      case HTML_LIMITED:
+      case HTML_LIMITED_EMBEDDED:
+        return Utils.sanitizeHtml(page.contents);
+      case HTML:
+      case HTML_EMBEDDED:
+        return page.contents;
+      case MARKDOWN:
+        return Utils.parseMarkdown(page.contents);
+      case EMBEDDED:
+      default: // safest option
+        return Utils.htmlToPlainText(page.contents);
+    }
+  }
+
+  public static Page render(Page page) {
+    page.rendered = renderContents(page);
+    page.rendererVersion = VERSION;
+    return page;
+  }
+
+  public static boolean isOutdated(Page page) {
+    return page.rendered == null || page.rendererVersion != VERSION;
+  }
+
+  public static boolean isEmbedded(Page.Syntax syntax) {
+    switch (syntax) {
+      case EMBEDDED:
+      case HTML_EMBEDDED:
+      case HTML_LIMITED_EMBEDDED:
+      case MARKDOWN:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+}
@@ -35,13 +35,40 @@ public class Reference {
       LOGIN_DEFAULT_EXPIRATION = 40320, // 28 days
       MIN_RESTART_INTERVAL = 360,       // 6 hours
       MAX_RESTART_INTERVAL = 524160,    // 1 year
-      TICK_DELAY = 100;                 // 0.1 seconds
+      TICK_DELAY = 100,                 // 0.1 seconds
+      PAGE_RENDER_BATCH_SIZE = 50,
+      LOGIN_CACHE_CAPACITY = 1024,
+      LOGIN_CACHE_TTL = 10,             // 10 minutes
+      USER_ROW_CACHE_CAPACITY = 1024,
+      PAGE_ROW_CACHE_CAPACITY = 256,
+      QUERY_MONITOR_MAX_STATEMENTS = 1000,
+      CONSOLE_QUEUE_CAPACITY = 4096,
+      CONSOLE_BATCH_SIZE = 256,
+      CONSOLE_SEND_INTERVAL = 250,      // 0.25 seconds
+      CONSOLE_MAX_SKIPPED_BATCHES = 40,
+      CONSOLE_HISTORY_CAPACITY = 1000,
+      LOG_INDEX_INTERVAL = 65536,       // 64 KB
+      LOG_INDEX_UPDATE_INTERVAL = 60,   // 1 hour
+      LOG_SEARCH_DEFAULT_LIMIT = 500,
+      LOG_SEARCH_MAX_LIMIT = 10000,
+      LOG_SEARCH_FLUSH_INTERVAL = 50,
+      MIGRATION_BATCH_SIZE = 1000;
+  public static final long
+      PAGE_CACHE_CAPACITY = 16777216,   // 16 MB
+      LOG_SEARCH_MAP_SIZE = 67108864;   // 64 MB
   public static final String
       TEMPLATES_DIR = "templates",
       SECURE_DIR = "secure",
       TEMP_DIR = "temp",
       STATIC_DIR = "static",
       ASSETS_DIR = "static/assets",
+      COMPRESSED_DIR = "compressed",
+      EXPORT_DIR = "export",
+      EXPORT_COMPRESSED_DIR = "compressed-export",
+      EXPORT_MANIFEST_FILE = "export.json",
+      SNAPSHOT_FILE = "snapshot.dat",
+      LOGS_DIR = "logs",
+      LOG_INDEX_DIR = "log-index",
       CONFIG_FILE = "configuration.json",
       KEY_CONFIG = "config";
 
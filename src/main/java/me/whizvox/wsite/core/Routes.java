@@ -1,5 +1,7 @@
 package me.whizvox.wsite.core;
 
+import ch.qos.logback.classic.Level;
+import me.whizvox.wsite.database.Login;
 import me.whizvox.wsite.database.Page;
 import me.whizvox.wsite.database.User;
 import me.whizvox.wsite.util.HttpUtils;
@@ -13,12 +15,21 @@ import org.eclipse.jetty.websocket.api.annotations.WebSocket;
 import spark.*;
 
 import javax.servlet.MultipartConfigElement;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.HttpCookie;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.zip.GZIPOutputStream;
 
 import static spark.Spark.halt;
 
@@ -61,7 +72,8 @@ public class Routes {
         if (needsOperator) {
           checkUserPermission(wsite, request);
         }
-        return wsite.parseTemplate(name, setupBasicDataModel(wsite));
+        response.type("text/html;charset=utf-8");
+        return wsite.parseCachedTemplate(name, name, () -> setupBasicDataModel(wsite));
       }
     };
   }
@@ -86,6 +98,97 @@ public class Routes {
     return dataModel;
   }
 
+  // renders straight into the response rather than building the whole body as a string first
+  private static String writeTemplate(WsiteService wsite, Response response, String name, Object dataModel)
+      throws IOException {
+    response.type("text/html;charset=utf-8");
+    return writeBody(response.raw(), false, writer -> wsite.writeTemplate(name, dataModel, writer));
+  }
+
+  private interface BodyWriter {
+    void write(Writer writer) throws IOException;
+  }
+
+  /**
+   * Writes a body straight into the response, compressing it on the way if asked to. Nothing is sent until Jetty's
+   * buffer fills up, so if the body fails before then, what was written is thrown away and the exception is handled like
+   * any other. After that the client has already been sent a 200 and part of the body, so the connection is cut off
+   * instead, rather than letting the body look complete.
+   */
+  private static String writeBody(HttpServletResponse response, boolean gzip, BodyWriter body) throws IOException {
+    try {
+      if (gzip) {
+        response.setHeader("Content-Encoding", "gzip");
+        GZIPOutputStream out = new GZIPOutputStream(response.getOutputStream());
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        body.write(writer);
+        writer.flush();
+        out.finish();
+      } else {
+        Writer writer = response.getWriter();
+        body.write(writer);
+        writer.flush();
+      }
+      // committing the response stops Spark from writing (or compressing) a body of its own
+      response.flushBuffer();
+      return "";
+    } catch (IOException | RuntimeException e) {
+      if (!response.isCommitted()) {
+        // unlike resetBuffer(), this also lets the error be written even though getWriter() has already been called
+        response.reset();
+      } else if (response instanceof org.eclipse.jetty.server.Response) {
+        ((org.eclipse.jetty.server.Response) response).getHttpChannel().abort(e);
+      }
+      throw e;
+    }
+  }
+
+  // sets the validators and, if the client's copy is still fresh, halts with a 304
+  private static void checkNotModified(Request request, Response response, String etag, Instant lastModified) {
+    HttpUtils.setCacheValidators(response, etag, lastModified);
+    if (HttpUtils.isNotModified(request, etag, lastModified)) {
+      halt(304);
+    }
+  }
+
+  public static class StaticFileFilter extends WsiteFilter {
+    private final StaticFileCache fileCache;
+    public StaticFileFilter(WsiteService wsite, StaticFileCache fileCache) {
+      super(wsite);
+      this.fileCache = fileCache;
+    }
+    @Override
+    public void handle(Request request, Response response) throws Exception {
+      boolean head = request.requestMethod().equalsIgnoreCase("HEAD");
+      if (!head && !request.requestMethod().equalsIgnoreCase("GET")) {
+        return;
+      }
+      HttpServletRequest rawRequest = request.raw();
+      String uriPath = rawRequest.getServletPath() + Optional.ofNullable(rawRequest.getPathInfo()).orElse("");
+      StaticFileCache.FileInfo file = fileCache.get(uriPath);
+      if (file == null) {
+        return;
+      }
+      boolean gzip = file.gzipPath != null && HttpUtils.acceptsGzip(request);
+      if (file.gzipPath != null) {
+        response.header("Vary", "Accept-Encoding");
+      }
+      checkNotModified(request, response, gzip ? file.gzipEtag : file.etag, file.lastModified);
+      HttpServletResponse rawResponse = response.raw();
+      rawResponse.setContentType(file.contentType);
+      if (gzip) {
+        rawResponse.setHeader("Content-Encoding", "gzip");
+      }
+      rawResponse.setContentLengthLong(gzip ? file.gzipSize : file.size);
+      if (!head) {
+        Files.copy(gzip ? file.gzipPath : file.path, rawResponse.getOutputStream());
+      }
+      // committing the response stops Spark from writing a body of its own
+      rawResponse.flushBuffer();
+      halt();
+    }
+  }
+
   public static class UserFilter extends WsiteFilter {
     static final String
         COOKIE_LOGIN_TOKEN = "login",
@@ -132,49 +235,95 @@ public class Routes {
   }
 
   public static class PageGetRoute extends WsiteRoute {
-    public static String getPage(WsiteService wsite, Request request, String path) {
-      if (Utils.isNullOrEmpty(path)) {
-        path = "home";
-      }
-      Page page = wsite.getPage(path);
-      if (page == null) {
+    public static String getPage(WsiteService wsite, Request request, Response response, String requestedPath)
+        throws IOException {
+      String path = Utils.isNullOrEmpty(requestedPath) ? "home" : requestedPath;
+      boolean gzip = HttpUtils.acceptsGzip(request);
+      response.header("Vary", "Accept-Encoding");
+      PageCache pageCache = wsite.getPageCache();
+      // concurrent requests for a page that isn't cached all wait on a single load and render
+      PageCache.Entry entry = pageCache.load(path, () -> {
+        Page page = wsite.getPage(path);
+        if (page == null) {
+          return null;
+        }
+        // an entry holds at least the rendered page. if that alone is too large, rendering it into a string would only
+        // get it turned away by the cache, so it goes straight out instead. anything smaller is turned away by its
+        // actual size once it's rendered
+        if (!pageCache.canHold(page.rendered.length() * 2L)) {
+          return PageCache.Entry.uncached(page);
+        }
+        // the database matched a path that isn't cached under the same key as the page's own, so it wouldn't be
+        // invalidated along with it
+        if (!PageCache.normalizePath(page.path).equals(PageCache.normalizePath(path))) {
+          return PageCache.Entry.uncached(page);
+        }
+        return createEntry(wsite, page);
+      });
+      if (entry == null) {
         haltWithBody(wsite, 404);
       }
-      String contents;
-      switch (page.syntax) {
-        case HTML_LIMITED:
-          contents = Utils.sanitizeHtml(page.contents);
-          break;
-        case HTML:
-          contents = page.contents;
-          break;
-        case EMBEDDED:
-        case HTML_EMBEDDED:
-        case HTML_LIMITED_EMBEDDED:
-        case MARKDOWN:
-          Map<String, Object> dataModel = setupBasicDataModel(wsite);
-          dataModel.put("pageTitle", page.title);
-          dataModel.put("escape", false);
-          switch (page.syntax) {
-            case EMBEDDED:
-              dataModel.put("contents", Utils.htmlToPlainText(page.contents));
-              break;
-            case HTML_EMBEDDED:
-              dataModel.put("contents", page.contents);
-              break;
-            case HTML_LIMITED_EMBEDDED:
-              dataModel.put("contents", Utils.sanitizeHtml(page.contents));
-              break;
-            case MARKDOWN:
-              dataModel.put("contents", Utils.parseMarkdown(page.contents));
-              break;
-          }
-          contents = wsite.parseTemplate("page.ftlh", dataModel);
-          break;
-        default: // safest option
-          contents = Utils.htmlToPlainText(page.contents);
+      if (entry.isUncached()) {
+        return streamPage(wsite, request, response, entry.page, gzip);
+      }
+      checkNotModified(request, response, gzip ? HttpUtils.createGzipEtag(entry.etag) : entry.etag,
+          entry.lastModified);
+      response.type("text/html;charset=utf-8");
+      if (!gzip) {
+        return entry.contents;
+      }
+      HttpServletResponse rawResponse = response.raw();
+      rawResponse.setHeader("Content-Encoding", "gzip");
+      rawResponse.setContentLength(entry.gzipped.length);
+      if (!request.requestMethod().equalsIgnoreCase("HEAD")) {
+        rawResponse.getOutputStream().write(entry.gzipped);
+      }
+      // committing the response stops Spark from compressing the body a second time
+      rawResponse.flushBuffer();
+      return "";
+    }
+    private static String streamPage(WsiteService wsite, Request request, Response response, Page page, boolean gzip)
+        throws IOException {
+      Instant lastModified = getLastModified(page);
+      String etag = getEtag(wsite, page, lastModified);
+      checkNotModified(request, response, gzip ? HttpUtils.createGzipEtag(etag) : etag, lastModified);
+      response.type("text/html;charset=utf-8");
+      if (request.requestMethod().equalsIgnoreCase("HEAD")) {
+        return "";
       }
-      return contents;
+      return writeBody(response.raw(), gzip, writer -> {
+        if (PageRenderer.isEmbedded(page.syntax)) {
+          wsite.writeTemplate("page.ftlh", createPageDataModel(wsite, page), writer);
+        } else {
+          writer.write(page.rendered);
+        }
+      });
+    }
+    public static PageCache.Entry createEntry(WsiteService wsite, Page page) {
+      Instant lastModified = getLastModified(page);
+      return new PageCache.Entry(renderPage(wsite, page), getEtag(wsite, page, lastModified), lastModified);
+    }
+    public static Instant getLastModified(Page page) {
+      return page.lastEdited == null ? page.published : page.lastEdited;
+    }
+    public static String getEtag(WsiteService wsite, Page page, Instant lastModified) {
+      String key = String.join("\0", wsite.getSiteName(), String.valueOf(PageRenderer.VERSION),
+          String.valueOf(lastModified.toEpochMilli()), page.syntax.toString(), page.title, page.contents);
+      return HttpUtils.createEtag(Utils.sha256(key));
+    }
+    public static String renderPage(WsiteService wsite, Page page) {
+      // the page's contents have already been rendered when it was written
+      if (PageRenderer.isEmbedded(page.syntax)) {
+        return wsite.parseTemplate("page.ftlh", createPageDataModel(wsite, page));
+      }
+      return page.rendered;
+    }
+    private static Map<String, Object> createPageDataModel(WsiteService wsite, Page page) {
+      Map<String, Object> dataModel = setupBasicDataModel(wsite);
+      dataModel.put("pageTitle", page.title);
+      dataModel.put("escape", false);
+      dataModel.put("contents", page.rendered);
+      return dataModel;
     }
     public PageGetRoute(WsiteService wsite) {
       super(wsite);
@@ -186,7 +335,7 @@ public class Routes {
       if (page.equals("control/wsconsole")) {
         return null;
       }
-      return getPage(wsite, request, request.splat()[0]);
+      return getPage(wsite, request, response, request.splat()[0]);
     }
   }
 
@@ -198,7 +347,7 @@ public class Routes {
     }
     @Override
     protected Object handle_do(Request request, Response response, WsiteService wsite) throws Exception {
-      return PageGetRoute.getPage(wsite, request, path);
+      return PageGetRoute.getPage(wsite, request, response, path);
     }
   }
 
@@ -262,7 +411,8 @@ public class Routes {
       if (user == null) {
         haltWithBody(wsite, 403);
       }
-      return wsite.parseTemplate("editSelf.ftlh", setupBasicDataModel(wsite));
+      response.type("text/html;charset=utf-8");
+      return wsite.parseCachedTemplate("editSelf.ftlh", "editSelf.ftlh", () -> setupBasicDataModel(wsite));
     }
   }
 
@@ -361,7 +511,7 @@ public class Routes {
       Map<String, Object> cfg = wsite.getConfigValues();
       Map<String, Object> dataModel = setupBasicDataModel(wsite);
       dataModel.put("config", cfg);
-      return wsite.parseTemplate("config.ftlh", dataModel);
+      return writeTemplate(wsite, response, "config.ftlh", dataModel);
     }
   }
 
@@ -440,59 +590,201 @@ public class Routes {
 
   @WebSocket
   public static class ConsoleRoute {
-    private Queue<Session> sessions;
+    private static final WsiteLogbackAppender.LogEvent UNAUTHORIZED =
+        new WsiteLogbackAppender.LogEvent(0, "! UNAUTHORIZED !");
+    private Map<Session, ConsoleSession> sessions;
     private WsiteService wsite;
+    // log events are handed off to a separate thread, so that logging never waits on any client
+    private BlockingQueue<WsiteLogbackAppender.LogEvent> queue;
+    private AtomicInteger dropped;
+    private Thread sender;
+    private volatile boolean running;
     public ConsoleRoute(WsiteService wsite) {
       this.wsite = wsite;
-      sessions = new ConcurrentLinkedQueue<>();
+      sessions = new ConcurrentHashMap<>();
+      queue = new ArrayBlockingQueue<>(Reference.CONSOLE_QUEUE_CAPACITY);
+      dropped = new AtomicInteger(0);
+      running = true;
+      sender = new Thread(this::runSender, "wsite-console");
+      sender.setDaemon(true);
+      sender.start();
+      // sessions are only authorized once when they connect, and are afterwards revoked through these
+      wsite.registerEventListener(WsiteEvent.LoginDeleted.class,
+          event -> revokeIf(auth -> auth.token.equals(event.token)));
+      wsite.registerEventListener(WsiteEvent.UserDeleted.class,
+          event -> revokeIf(auth -> auth.userId.equals(event.userId)));
+      wsite.registerEventListener(WsiteEvent.UserUpdated.class, event -> revokeIf(auth -> {
+        if (!auth.userId.equals(event.userId)) {
+          return false;
+        }
+        User user = wsite.getUserFromLoginToken(auth.token);
+        return user == null || !user.operator;
+      }));
     }
-    private boolean checkPermission(Session session) {
+    private ConsoleSession authorize(Session session) {
       List<HttpCookie> cookies = session.getUpgradeRequest().getCookies();
       HttpCookie loginCookie = cookies.stream()
           .filter(cookie -> cookie.getName().equals(UserFilter.COOKIE_LOGIN_TOKEN))
           .findFirst().orElse(null);
-      boolean authorized = false;
       if (loginCookie != null) {
+        Login login = wsite.getLogin(loginCookie.getValue());
         User user = wsite.getUserFromLoginToken(loginCookie.getValue());
-        authorized = user != null && user.operator;
+        if (login != null && user != null && user.operator) {
+          return new ConsoleSession(login.token, user.id, login.expirationDate);
+        }
       }
-      if (!authorized) {
-        sessions.remove(session);
-        send_do(session, new WsiteLogbackAppender.LogEvent(0, "! UNAUTHORIZED !"));
-        session.close();
+      return null;
+    }
+    // the sender thread is the only one that writes to registered sessions, so it takes care of actually revoking
+    private void revokeIf(Predicate<ConsoleSession> predicate) {
+      sessions.forEach((session, auth) -> {
+        if (predicate.test(auth)) {
+          wsite.getLogger().info("Revoking access to the remote console ({})", session.getRemoteAddress().toString());
+          auth.revoked = true;
+        }
+      });
+    }
+    /**
+     * Never blocks. If the sender can't keep up, the oldest events are dropped.
+     */
+    public void publish(WsiteLogbackAppender.LogEvent event) {
+      while (!queue.offer(event)) {
+        if (queue.poll() != null) {
+          dropped.incrementAndGet();
+        }
       }
-      return authorized;
     }
-    private void send_do(Session session, Object msg) {
-      try {
-        session.getRemote().sendString(JsonUtils.toJson(msg));
-      } catch (IOException e) {
-        wsite.getLogger().error("Could not send message to session", e);
+    private void runSender() {
+      List<WsiteLogbackAppender.LogEvent> batch = new ArrayList<>();
+      while (running) {
+        batch.clear();
+        try {
+          WsiteLogbackAppender.LogEvent first = queue.poll(Reference.CONSOLE_SEND_INTERVAL, TimeUnit.MILLISECONDS);
+          if (first != null) {
+            int droppedCount = dropped.getAndSet(0);
+            if (droppedCount > 0) {
+              batch.add(new WsiteLogbackAppender.LogEvent(Level.WARN_INT, "! " + droppedCount + " MESSAGES DROPPED !"));
+            }
+            batch.add(first);
+            queue.drainTo(batch, Reference.CONSOLE_BATCH_SIZE - batch.size());
+          }
+        } catch (InterruptedException e) {
+          break;
+        }
+        // multiple events are sent in a single frame
+        String message = batch.isEmpty() ? null : JsonUtils.toJson(batch);
+        Instant now = Instant.now();
+        sessions.forEach((session, auth) -> {
+          if (auth.revoked || !auth.expirationDate.isAfter(now)) {
+            sessions.remove(session);
+            if (auth.isIdle()) {
+              auth.pending = session.getRemote().sendStringByFuture(JsonUtils.toJson(Collections.singletonList(UNAUTHORIZED)));
+            }
+            session.close();
+          } else if (!auth.replayed) {
+            // the first thing a session is sent is whatever it missed. anything in the current batch was already
+            // recorded by then, so it's covered by this as well
+            List<WsiteLogbackAppender.LogEvent> missed = new ArrayList<>();
+            auth.lastSequence = WsiteLogbackAppender.getInstance().getHistory()
+                .copySince(auth.lastSequence, auth.minLevel, missed);
+            auth.replayed = true;
+            if (!missed.isEmpty()) {
+              auth.pending = session.getRemote().sendStringByFuture(JsonUtils.toJson(missed));
+            }
+          } else if (message != null) {
+            List<WsiteLogbackAppender.LogEvent> events = filterEvents(batch, auth);
+            if (events.isEmpty()) {
+              return;
+            }
+            if (auth.isIdle()) {
+              auth.skipped = 0;
+              auth.pending = session.getRemote().sendStringByFuture(events.size() == batch.size() ? message : JsonUtils.toJson(events));
+            } else if (++auth.skipped > Reference.CONSOLE_MAX_SKIPPED_BATCHES) {
+              // the client can't keep up, most likely because of a slow connection
+              wsite.getLogger().warn("Disconnecting slow client from the remote console ({})",
+                  session.getRemoteAddress().toString());
+              sessions.remove(session);
+              session.close();
+            }
+          }
+        });
       }
     }
-    public void send(Session session, Object msg) {
-      if (checkPermission(session)) {
-        send_do(session, msg);
+    private static List<WsiteLogbackAppender.LogEvent> filterEvents(List<WsiteLogbackAppender.LogEvent> batch, ConsoleSession auth) {
+      List<WsiteLogbackAppender.LogEvent> events = new ArrayList<>(batch.size());
+      long lastSequence = auth.lastSequence;
+      for (WsiteLogbackAppender.LogEvent event : batch) {
+        if (event.level >= auth.minLevel && (event.sequence == 0 || event.sequence > auth.lastSequence)) {
+          events.add(event);
+        }
+        lastSequence = Math.max(lastSequence, event.sequence);
       }
+      auth.lastSequence = lastSequence;
+      return events;
     }
-    public void broadcast(Object msg) {
-      sessions.forEach(session -> send(session, msg));
+    private static String getParameter(Session session, String key) {
+      List<String> values = session.getUpgradeRequest().getParameterMap().get(key);
+      return values == null || values.isEmpty() ? null : values.get(0);
     }
     public void disconnectAll() {
-      sessions.forEach(Session::close);
+      running = false;
+      sender.interrupt();
+      sessions.keySet().forEach(Session::close);
     }
     @OnWebSocketConnect
     public void connected(Session session) {
-      if (checkPermission(session)) {
-        wsite.getLogger().info("Client has connected to the remote console ({})", session.getRemoteAddress().toString());
-        sessions.add(session);
+      ConsoleSession auth = authorize(session);
+      if (auth == null) {
+        try {
+          session.getRemote().sendString(JsonUtils.toJson(Collections.singletonList(UNAUTHORIZED)));
+        } catch (IOException e) {
+          wsite.getLogger().error("Could not send message to session", e);
+        }
+        session.close();
+        return;
       }
+      // reconnecting clients only need what they haven't seen yet
+      String since = getParameter(session, "since");
+      if (since != null) {
+        try {
+          auth.lastSequence = Long.parseLong(since);
+        } catch (NumberFormatException ignored) {}
+      }
+      auth.minLevel = Level.toLevel(getParameter(session, "level"), Level.ALL).toInt();
+      wsite.getLogger().info("Client has connected to the remote console ({})", session.getRemoteAddress().toString());
+      sessions.put(session, auth);
     }
     @OnWebSocketClose
     public void closed(Session session, int status, String reason) {
       wsite.getLogger().info("Client disconnected from the remote console ({}, {})", status, reason);
       sessions.remove(session);
     }
+    private static class ConsoleSession {
+      final String token;
+      final UUID userId;
+      final Instant expirationDate;
+      volatile boolean revoked;
+      int minLevel;
+      // only touched by the sender thread
+      Future<Void> pending;
+      int skipped;
+      boolean replayed;
+      long lastSequence;
+      ConsoleSession(String token, UUID userId, Instant expirationDate) {
+        this.token = token;
+        this.userId = userId;
+        this.expirationDate = expirationDate;
+        revoked = false;
+        minLevel = Level.ALL_INT;
+        pending = null;
+        skipped = 0;
+        replayed = false;
+        lastSequence = 0;
+      }
+      boolean isIdle() {
+        return pending == null || pending.isDone();
+      }
+    }
   }
 
   public static class SetupGetRoute extends WsiteRoute {
@@ -503,7 +795,7 @@ public class Routes {
     protected Object handle_do(Request request, Response response, WsiteService wsite) throws Exception {
       Map<String, Object> dataModel = setupBasicDataModel(wsite);
       dataModel.put(Reference.KEY_CONFIG, wsite.getConfigValues());
-      return wsite.parseTemplate("setup.ftlh", dataModel);
+      return writeTemplate(wsite, response, "setup.ftlh", dataModel);
     }
   }
 
@@ -526,6 +818,14 @@ public class Routes {
   }
 
   public static String generateHaltBody(WsiteService wsite, int status, String customMessage) {
+    if (customMessage == null) {
+      return wsite.parseCachedTemplate("halt.ftlh#" + status, "halt.ftlh",
+          () -> createHaltDataModel(wsite, status, null));
+    }
+    return wsite.parseTemplate("halt.ftlh", createHaltDataModel(wsite, status, customMessage));
+  }
+
+  private static Map<String, Object> createHaltDataModel(WsiteService wsite, int status, String customMessage) {
     Map<String, Object> dataModel = setupBasicDataModel(wsite);
     dataModel.put("code", status);
     String summary, message;
@@ -551,7 +851,7 @@ public class Routes {
     }
     dataModel.put("summary", summary);
     dataModel.put("message", message);
-    return wsite.parseTemplate("halt.ftlh", dataModel);
+    return dataModel;
   }
 
   public static String generateHaltBody(WsiteService wsite, int status) {
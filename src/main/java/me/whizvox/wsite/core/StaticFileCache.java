@@ -0,0 +1,248 @@
+package me.whizvox.wsite.core;
+
+import me.whizvox.wsite.util.HttpUtils;
+import me.whizvox.wsite.util.IOUtils;
+import me.whizvox.wsite.util.Utils;
+import org.eclipse.jetty.http.MimeTypes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class StaticFileCache {
+
+  private static final String
+      WELCOME_FILE = "index.html",
+      GZIP_EXTENSION = ".gz";
+
+  // binary formats that are already compressed aren't worth the effort
+  private static final Set<String> COMPRESSIBLE_EXTENSIONS = new HashSet<>(Arrays.asList(
+      "html", "htm", "css", "js", "json", "map", "txt", "md", "csv", "xml", "svg", "ico"
+  ));
+
+  private final Path root;
+  private final Path compressedRoot;
+  private final String charset;
+  private final Map<Path, FileInfo> files;
+
+  /**
+   * @param charset Appended to the content type of text files, or null to leave it up to the client
+   */
+  public StaticFileCache(Path root, Path compressedRoot, String charset) {
+    this.root = root.toAbsolutePath().normalize();
+    this.compressedRoot = compressedRoot.toAbsolutePath().normalize();
+    this.charset = charset;
+    files = new ConcurrentHashMap<>();
+  }
+
+  public StaticFileCache(Path root, Path compressedRoot) {
+    this(root, compressedRoot, null);
+  }
+
+  public Path getCompressedRoot() {
+    return compressedRoot;
+  }
+
+  public Path resolve(String uriPath) {
+    while (uriPath.startsWith("/")) {
+      uriPath = uriPath.substring(1);
+    }
+    try {
+      Path path = root.resolve(uriPath).normalize();
+      if (path.startsWith(root)) {
+        return path;
+      }
+    } catch (InvalidPathException ignored) {}
+    return null;
+  }
+
+  /**
+   * Returns null if the URI path doesn't point to a regular file within the root directory. The file is only hashed
+   * again if its size or modification time has changed since it was last looked up.
+   */
+  public FileInfo get(String uriPath) throws IOException {
+    Path path = resolve(uriPath);
+    if (path == null) {
+      return null;
+    }
+    if (Files.isDirectory(path)) {
+      path = path.resolve(WELCOME_FILE);
+    }
+    BasicFileAttributes attrs;
+    try {
+      attrs = Files.readAttributes(path, BasicFileAttributes.class);
+    } catch (NoSuchFileException e) {
+      files.remove(path);
+      return null;
+    }
+    if (!attrs.isRegularFile()) {
+      return null;
+    }
+    long lastModified = attrs.lastModifiedTime().toMillis();
+    FileInfo info = files.get(path);
+    if (info == null || info.lastModifiedMillis != lastModified || info.size != attrs.size()) {
+      info = new FileInfo(path, attrs.size(), lastModified, hashFile(path), getCompressedVariant(path, lastModified),
+          charset);
+      files.put(path, info);
+    }
+    return info;
+  }
+
+  public void invalidate(Path path) {
+    files.remove(path.toAbsolutePath().normalize());
+  }
+
+  public void clear() {
+    files.clear();
+  }
+
+  public static boolean isCompressible(Path path) {
+    String fileName = path.getFileName().toString();
+    int dot = fileName.lastIndexOf('.');
+    return dot != -1 && COMPRESSIBLE_EXTENSIONS.contains(fileName.substring(dot + 1).toLowerCase());
+  }
+
+  public Path getCompressedPath(Path path) {
+    path = path.toAbsolutePath().normalize();
+    if (!path.startsWith(root)) {
+      return null;
+    }
+    return compressedRoot.resolve(root.relativize(path).toString() + GZIP_EXTENSION);
+  }
+
+  // a variant older than its file is left over from a previous version and mustn't be served
+  private Path getCompressedVariant(Path path, long lastModified) throws IOException {
+    Path compressedPath = getCompressedPath(path);
+    if (compressedPath == null) {
+      return null;
+    }
+    try {
+      BasicFileAttributes attrs = Files.readAttributes(compressedPath, BasicFileAttributes.class);
+      if (attrs.isRegularFile() && attrs.lastModifiedTime().toMillis() >= lastModified) {
+        return compressedPath;
+      }
+    } catch (NoSuchFileException ignored) {}
+    return null;
+  }
+
+  /**
+   * Writes a gzipped variant of a file, so that requests for it never have to compress anything. The variant is only
+   * kept if it ends up being smaller than the original.
+   */
+  public void compress(Path path) throws IOException {
+    path = path.toAbsolutePath().normalize();
+    Path compressedPath = getCompressedPath(path);
+    if (compressedPath == null) {
+      return;
+    }
+    if (isCompressible(path) && Files.isRegularFile(path)) {
+      IOUtils.mkdirs(compressedPath.getParent());
+      IOUtils.gzip(path, compressedPath);
+      if (Files.size(compressedPath) >= Files.size(path)) {
+        Files.delete(compressedPath);
+      }
+    } else {
+      Files.deleteIfExists(compressedPath);
+    }
+    invalidate(path);
+  }
+
+  public void removeCompressed(Path path) throws IOException {
+    Path compressedPath = getCompressedPath(path);
+    if (compressedPath != null) {
+      if (Files.deleteIfExists(compressedPath)) {
+        IOUtils.cleanupEmptyDirectories(compressedRoot);
+      }
+    }
+    invalidate(path);
+  }
+
+  /**
+   * Brings every compressed variant up to date, including ones for files that were changed outside of Wsite, and
+   * removes variants whose files no longer exist. Returns the number of variants that were written.
+   */
+  public int compressAll() throws IOException {
+    int count = 0;
+    List<Path> paths;
+    try (Stream<Path> stream = Files.walk(root)) {
+      paths = stream.filter(Files::isRegularFile).filter(StaticFileCache::isCompressible).collect(Collectors.toList());
+    }
+    for (Path path : paths) {
+      Path compressedPath = getCompressedPath(path);
+      if (!Files.exists(compressedPath) ||
+          Files.getLastModifiedTime(compressedPath).compareTo(Files.getLastModifiedTime(path)) < 0) {
+        compress(path);
+        count++;
+      }
+    }
+    if (Files.exists(compressedRoot)) {
+      List<Path> variants;
+      try (Stream<Path> stream = Files.walk(compressedRoot)) {
+        variants = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+      }
+      for (Path variant : variants) {
+        String relative = compressedRoot.relativize(variant).toString();
+        if (!relative.endsWith(GZIP_EXTENSION) ||
+            !Files.isRegularFile(root.resolve(relative.substring(0, relative.length() - GZIP_EXTENSION.length())))) {
+          Files.delete(variant);
+        }
+      }
+      IOUtils.cleanupEmptyDirectories(compressedRoot);
+    }
+    return count;
+  }
+
+  private static String hashFile(Path path) throws IOException {
+    MessageDigest digest = Utils.createSha256Digest();
+    byte[] buffer = new byte[8192];
+    try (InputStream in = Files.newInputStream(path)) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    return HttpUtils.createEtag(digest.digest());
+  }
+
+  public static class FileInfo {
+    public final Path path;
+    public final long size;
+    public final long lastModifiedMillis;
+    public final Instant lastModified;
+    public final String etag;
+    public final String contentType;
+    public final Path gzipPath;
+    public final String gzipEtag;
+    public final long gzipSize;
+    public FileInfo(Path path, long size, long lastModifiedMillis, String etag, Path gzipPath, String charset)
+        throws IOException {
+      this.path = path;
+      this.size = size;
+      this.lastModifiedMillis = lastModifiedMillis;
+      this.etag = etag;
+      this.gzipPath = gzipPath;
+      gzipEtag = gzipPath == null ? null : HttpUtils.createGzipEtag(etag);
+      gzipSize = gzipPath == null ? -1 : Files.size(gzipPath);
+      lastModified = Instant.ofEpochMilli(lastModifiedMillis);
+      String type = MimeTypes.getDefaultMimeByExtension(path.getFileName().toString());
+      if (type == null) {
+        contentType = "application/octet-stream";
+      } else if (charset != null && type.startsWith("text/")) {
+        contentType = type + ";charset=" + charset;
+      } else {
+        contentType = type;
+      }
+    }
+  }
+
+}
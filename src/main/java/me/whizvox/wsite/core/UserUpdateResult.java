@@ -0,0 +1,33 @@
+package me.whizvox.wsite.core;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * What came of changing each field of a user at once. A field that wasn't given is left as null. A valid field is
+ * SUCCESS even if another one is the reason nothing was changed, so it's {@link #result} that says whether it was.
+ */
+public class UserUpdateResult {
+
+  private static final Set<WsiteResult> NOT_CHANGED = EnumSet.of(WsiteResult.USER_USERNAME_NOT_CHANGED,
+      WsiteResult.USER_EMAIL_ADDRESS_NOT_CHANGED, WsiteResult.USER_PASSWORD_NOT_CHANGED,
+      WsiteResult.USER_OPERATOR_NOT_CHANGED);
+
+  // SUCCESS if every given field was either changed or already the same, otherwise the first one that wasn't
+  public WsiteResult result;
+  public WsiteResult username;
+  public WsiteResult emailAddress;
+  public WsiteResult password;
+  public WsiteResult operator;
+
+  // in the order the fields are checked in
+  WsiteResult getFirstProblem() {
+    for (WsiteResult field : new WsiteResult[] {username, emailAddress, password, operator}) {
+      if (field != null && field != WsiteResult.SUCCESS && !NOT_CHANGED.contains(field)) {
+        return field;
+      }
+    }
+    return null;
+  }
+
+}
@@ -18,9 +18,18 @@ public class WsiteConfiguration {
   @Getter public String indexPage;
 
   @Getter public String databaseUrl;
+  @Getter public String databaseDialect;
   @Getter public String databaseUsername;
   @Getter public String databasePassword;
   @Getter public Properties databaseProperties;
+  @Getter public int databasePoolMinSize;
+  @Getter public int databasePoolMaxSize;
+  @Getter public int databasePoolTimeout;
+  @Getter public String databaseSqliteSynchronous;
+  @Getter public int databaseSqliteCacheSize;
+  @Getter public int databaseSqliteMmapSize;
+  @Getter public int databaseWriteBatchSize;
+  @Getter public int databaseSlowQueryThreshold;
 
   @Getter public boolean enableSsl;
   @Getter public String keystoreFile;
@@ -48,9 +57,18 @@ public class WsiteConfiguration {
     indexPage = "home";
 
     databaseUrl = "jdbc:sqlite:${ROOT}/wsite.db";
+    databaseDialect = "";
     databaseUsername = null;
     databasePassword = "";
     databaseProperties = new Properties();
+    databasePoolMinSize = 1;
+    databasePoolMaxSize = 10;
+    databasePoolTimeout = 30000;
+    databaseSqliteSynchronous = "NORMAL";
+    databaseSqliteCacheSize = 16384;
+    databaseSqliteMmapSize = 268435456;
+    databaseWriteBatchSize = 64;
+    databaseSlowQueryThreshold = 250;
 
     enableSsl = false;
     keystoreFile = null;
@@ -75,9 +93,18 @@ public class WsiteConfiguration {
     Optional.ofNullable(map.get(KEY_PASSWORD_PATTERN)).ifPresent((passwordPattern) -> this.passwordPattern = (String) passwordPattern);
     Optional.ofNullable(map.get(KEY_INDEX_PAGE)).ifPresent((indexPage) -> this.indexPage = (String) indexPage);
     Optional.ofNullable(map.get(KEY_DATABASE_URL)).ifPresent((databaseUrl) -> this.databaseUrl = (String) databaseUrl);
+    Optional.ofNullable(map.get(KEY_DATABASE_DIALECT)).ifPresent((databaseDialect) -> this.databaseDialect = (String) databaseDialect);
     Optional.ofNullable(map.get(KEY_DATABASE_USERNAME)).ifPresent((databaseUsername) -> this.databaseUsername = (String) databaseUsername);
     Optional.ofNullable(map.get(KEY_DATABASE_PASSWORD)).ifPresent((databasePassword) -> this.databasePassword = (String) databasePassword);
     Optional.ofNullable(map.get(KEY_DATABASE_PROPERTIES)).ifPresent((databaseProperties) -> this.databaseProperties = new Properties((Properties) databaseProperties));
+    Optional.ofNullable(map.get(KEY_DATABASE_POOL_MIN_SIZE)).ifPresent((databasePoolMinSize) -> this.databasePoolMinSize = (int) databasePoolMinSize);
+    Optional.ofNullable(map.get(KEY_DATABASE_POOL_MAX_SIZE)).ifPresent((databasePoolMaxSize) -> this.databasePoolMaxSize = (int) databasePoolMaxSize);
+    Optional.ofNullable(map.get(KEY_DATABASE_POOL_TIMEOUT)).ifPresent((databasePoolTimeout) -> this.databasePoolTimeout = (int) databasePoolTimeout);
+    Optional.ofNullable(map.get(KEY_DATABASE_SQLITE_SYNCHRONOUS)).ifPresent((databaseSqliteSynchronous) -> this.databaseSqliteSynchronous = (String) databaseSqliteSynchronous);
+    Optional.ofNullable(map.get(KEY_DATABASE_SQLITE_CACHE_SIZE)).ifPresent((databaseSqliteCacheSize) -> this.databaseSqliteCacheSize = (int) databaseSqliteCacheSize);
+    Optional.ofNullable(map.get(KEY_DATABASE_SQLITE_MMAP_SIZE)).ifPresent((databaseSqliteMmapSize) -> this.databaseSqliteMmapSize = (int) databaseSqliteMmapSize);
+    Optional.ofNullable(map.get(KEY_DATABASE_WRITE_BATCH_SIZE)).ifPresent((databaseWriteBatchSize) -> this.databaseWriteBatchSize = (int) databaseWriteBatchSize);
+    Optional.ofNullable(map.get(KEY_DATABASE_SLOW_QUERY_THRESHOLD)).ifPresent((databaseSlowQueryThreshold) -> this.databaseSlowQueryThreshold = (int) databaseSlowQueryThreshold);
     Optional.ofNullable(map.get(KEY_ENABLE_SSL)).ifPresent((enableSsl) -> this.enableSsl = (boolean) enableSsl);
     Optional.ofNullable(map.get(KEY_KEYSTORE_FILE)).ifPresent((keystoreFile) -> this.keystoreFile = (String) keystoreFile);
     Optional.ofNullable(map.get(KEY_KEYSTORE_PASSWORD)).ifPresent((keystorePassword) -> this.keystorePassword = (String) keystorePassword);
@@ -113,9 +140,18 @@ public class WsiteConfiguration {
       KEY_PASSWORD_PATTERN = "passwordPattern",
       KEY_INDEX_PAGE = "indexPage",
       KEY_DATABASE_URL = "databaseUrl",
+      KEY_DATABASE_DIALECT = "databaseDialect",
       KEY_DATABASE_USERNAME = "databaseUsername",
       KEY_DATABASE_PASSWORD = "databasePassword",
       KEY_DATABASE_PROPERTIES = "databaseProperties",
+      KEY_DATABASE_POOL_MIN_SIZE = "databasePoolMinSize",
+      KEY_DATABASE_POOL_MAX_SIZE = "databasePoolMaxSize",
+      KEY_DATABASE_POOL_TIMEOUT = "databasePoolTimeout",
+      KEY_DATABASE_SQLITE_SYNCHRONOUS = "databaseSqliteSynchronous",
+      KEY_DATABASE_SQLITE_CACHE_SIZE = "databaseSqliteCacheSize",
+      KEY_DATABASE_SQLITE_MMAP_SIZE = "databaseSqliteMmapSize",
+      KEY_DATABASE_WRITE_BATCH_SIZE = "databaseWriteBatchSize",
+      KEY_DATABASE_SLOW_QUERY_THRESHOLD = "databaseSlowQueryThreshold",
       KEY_ENABLE_SSL = "enableSsl",
       KEY_KEYSTORE_FILE = "keystoreFile",
       KEY_KEYSTORE_PASSWORD = "keystorePassword",
@@ -1,5 +1,7 @@
 package me.whizvox.wsite.core;
 
+import java.util.UUID;
+
 public class WsiteEvent {
 
   protected WsiteService wsite;
@@ -26,4 +28,28 @@ public class WsiteEvent {
     }
   }
 
+  public static class LoginDeleted extends WsiteEvent {
+    public final String token;
+    public LoginDeleted(WsiteService wsite, String token) {
+      super(wsite);
+      this.token = token;
+    }
+  }
+
+  public static class UserUpdated extends WsiteEvent {
+    public final UUID userId;
+    public UserUpdated(WsiteService wsite, UUID userId) {
+      super(wsite);
+      this.userId = userId;
+    }
+  }
+
+  public static class UserDeleted extends WsiteEvent {
+    public final UUID userId;
+    public UserDeleted(WsiteService wsite, UUID userId) {
+      super(wsite);
+      this.userId = userId;
+    }
+  }
+
 }
@@ -14,6 +14,9 @@ public class WsiteLogbackAppender extends AppenderBase<ILoggingEvent> {
 
   private Encoder<ILoggingEvent> encoder;
   private Routes.ConsoleRoute consoleRoute;
+  // outlives the console route, so that it also holds whatever was logged while the service was being created
+  private final LogHistory history;
+  private long nextSequence;
 
   public WsiteLogbackAppender() {
     if (instance != null) {
@@ -22,6 +25,8 @@ public class WsiteLogbackAppender extends AppenderBase<ILoggingEvent> {
     // really hacky, but the only way to do this
     instance = this;
     consoleRoute = null;
+    history = new LogHistory(Reference.CONSOLE_HISTORY_CAPACITY);
+    nextSequence = 1;
   }
 
   public Encoder<ILoggingEvent> getEncoder() {
@@ -36,23 +41,37 @@ public class WsiteLogbackAppender extends AppenderBase<ILoggingEvent> {
     this.consoleRoute = consoleRoute;
   }
 
+  public LogHistory getHistory() {
+    return history;
+  }
+
+  // calls to this are already synchronized by AppenderBase
   @Override
   protected void append(ILoggingEvent eventObject) {
+    String str = new String(encoder.encode(eventObject));
+    long sequence = nextSequence++;
+    int level = eventObject.getLevel().toInt();
+    history.add(sequence, level, str);
     if (consoleRoute != null) {
-      String str = new String(encoder.encode(eventObject));
-      consoleRoute.broadcast(new LogEvent(eventObject.getLevel().toInt(), str));
+      consoleRoute.publish(new LogEvent(sequence, level, str));
     }
   }
 
   public static class LogEvent {
+    // 0 for messages that weren't actually logged
+    public long sequence;
     public int level;
     public String message;
     public LogEvent() {
     }
-    public LogEvent(int level, String message) {
+    public LogEvent(long sequence, int level, String message) {
+      this.sequence = sequence;
       this.level = level;
       this.message = message;
     }
+    public LogEvent(int level, String message) {
+      this(0, level, message);
+    }
   }
 
 
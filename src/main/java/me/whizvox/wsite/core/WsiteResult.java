@@ -19,10 +19,12 @@ public enum WsiteResult {
   USER_INVALID_QUERY,
   USER_MATCHING_IDS,
   USER_NO_VALID_CHECK_FIELDS,
+  USER_INVALID_CURSOR,
   PAGE_INVALID_PATH,
   PAGE_PATH_CONFLICT,
   PAGE_PATH_NOT_FOUND,
   PAGE_PATH_MISSING,
+  PAGE_INVALID_CURSOR,
   LOGIN_INVALID_QUERY,
   LOGIN_QUERY_NOT_FOUND,
   LOGIN_INCORRECT_PASSWORD,
@@ -35,6 +37,10 @@ public enum WsiteResult {
   CONFIG_INVALID_USERNAME_PATTERN,
   CONFIG_INVALID_PASSWORD_PATTERN,
   CONFIG_NO_DATABASE_URL,
+  CONFIG_INVALID_DATABASE_DIALECT,
+  CONFIG_INVALID_DATABASE_POOL,
+  CONFIG_INVALID_DATABASE_SQLITE,
+  CONFIG_INVALID_DATABASE_SLOW_QUERY_THRESHOLD,
   CONFIG_NO_KEYSTORE,
   CONFIG_INVALID_KEYSTORE,
   CONFIG_INVALID_TRUSTSTORE,
@@ -46,6 +52,8 @@ public enum WsiteResult {
   ASSET_PATH_NOT_FOUND,
   ASSET_CANNOT_DELETE_NONFILE,
   ASSET_CANNOT_MODIFY_PROTECTED,
+  LOG_INVALID_TIME,
+  LOG_INVALID_LEVEL,
   NO_TOKEN,
   INVALID_BASE64,
   UNAUTHORIZED
@@ -2,6 +2,8 @@ package me.whizvox.wsite.core;
 
 import freemarker.cache.ClassTemplateLoader;
 import freemarker.template.Configuration;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateExceptionHandler;
 import me.whizvox.wsite.database.*;
 import me.whizvox.wsite.event.EventListener;
 import me.whizvox.wsite.event.EventManager;
@@ -9,8 +11,7 @@ import me.whizvox.wsite.hash.HashManager;
 import me.whizvox.wsite.util.IOUtils;
 import me.whizvox.wsite.util.JsonUtils;
 import me.whizvox.wsite.util.Utils;
-import org.jooq.DSLContext;
-import org.jooq.impl.DSL;
+import org.jooq.SQLDialect;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spark.ModelAndView;
@@ -21,20 +22,24 @@ import spark.template.freemarker.FreeMarkerEngine;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Writer;
 import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
-import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.time.*;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 public class WsiteService implements Runnable {
@@ -44,15 +49,24 @@ public class WsiteService implements Runnable {
   private Logger logger;
   private boolean created;
   private Path rootDir;
-  private Connection conn;
-  private DSLContext dslContext;
+  private Database database;
+  private QueryMonitor queryMonitor;
   private EventManager eventManager;
   private HashManager hashManager;
-  private PageRepository pageRepo;
-  private UserRepository userRepo;
+  private CachingPageRepository pageRepo;
+  private CachingUserRepository userRepo;
   private LoginRepository loginRepo;
   private TemplateEngine templateEngine;
+  private Configuration freemarkerConfig;
   private List<String> protectedAssets;
+  private PageCache pageCache;
+  private PagePathFilter pagePaths;
+  private LoginCache loginCache;
+  private StaticFileCache staticFileCache;
+  private PageExporter pageExporter;
+  private LogSearcher logSearcher;
+  private Map<String, String> cachedTemplates;
+  private String pageCacheStamp;
 
   private Pattern usernamePattern;
   private Pattern passwordPattern;
@@ -73,6 +87,10 @@ public class WsiteService implements Runnable {
     eventManager = new EventManager();
     newConfig = new HashMap<>();
     protectedAssets = new ArrayList<>();
+    pageCache = new PageCache(Reference.PAGE_CACHE_CAPACITY);
+    pageCacheStamp = null;
+    cachedTemplates = new ConcurrentHashMap<>();
+    loginCache = new LoginCache(Reference.LOGIN_CACHE_CAPACITY, TimeUnit.MINUTES.toMillis(Reference.LOGIN_CACHE_TTL));
     consoleRoute = null;
   }
 
@@ -88,6 +106,38 @@ public class WsiteService implements Runnable {
     return hashManager;
   }
 
+  public PageCache getPageCache() {
+    return pageCache;
+  }
+
+  public StaticFileCache getStaticFileCache() {
+    return staticFileCache;
+  }
+
+  public PageExporter getPageExporter() {
+    return pageExporter;
+  }
+
+  public Database.Stats getDatabaseStats() {
+    Database.Stats stats = database.getStats();
+    stats.caches = Arrays.asList(userRepo.getCacheStats(), pageRepo.getCacheStats());
+    return stats;
+  }
+
+  public QueryMonitor.Snapshot getQueryStats() {
+    return queryMonitor.getSnapshot();
+  }
+
+  public void clearQueryStats() {
+    logger.info("Clearing database query statistics");
+    queryMonitor.clear();
+  }
+
+  public LogSearcher.Summary searchLogs(LogSearcher.Query query, Consumer<LogSearcher.Match> consumer)
+      throws IOException {
+    return logSearcher.search(query, consumer);
+  }
+
   public Map<String, Object> getConfigValues() {
     Map<String, Object> values = new HashMap<>();
     config.getAllValues(values);
@@ -148,7 +198,13 @@ public class WsiteService implements Runnable {
     user.whenCreated = Instant.now();
     user.operator = operator;
     logger.info("Creating new user with user id {} and username {}", user.id, user.username);
-    userRepo.insert(user);
+    try {
+      userRepo.insert(user);
+    } catch (DuplicateKeyException e) {
+      // taken by another user since it was checked
+      return userRepo.selectFromUsername(username) != null ?
+          WsiteResult.USER_USERNAME_CONFLICT : WsiteResult.USER_EMAIL_ADDRESS_CONFLICT;
+    }
     return WsiteResult.SUCCESS;
   }
 
@@ -156,104 +212,129 @@ public class WsiteService implements Runnable {
     return createNewUser(username, emailAddress, password, operator, usernamePattern, passwordPattern);
   }
 
-  public WsiteResult updateUserUsername(UUID id, String username) {
+  /**
+   * Changes any of a user's username, email address, password and operator status at once, leaving the ones that are
+   * null as they are. Nothing is changed unless every given field is valid, and everything that is changed is written
+   * in a single update.
+   */
+  public UserUpdateResult updateUserFields(UUID id, String username, String emailAddress, char[] password,
+                                           Boolean operator) {
+    UserUpdateResult res = new UserUpdateResult();
     User user = userRepo.selectFromId(id);
     if (user == null) {
-      return WsiteResult.USER_ID_NOT_FOUND;
+      res.result = WsiteResult.USER_ID_NOT_FOUND;
+      return res;
+    }
+    List<String> changed = new ArrayList<>();
+    String newUsername = null;
+    if (username != null) {
+      if (!Utils.checkUsername(username)) {
+        res.username = WsiteResult.USER_INVALID_USERNAME;
+      } else if (user.username.equals(username)) {
+        res.username = WsiteResult.USER_USERNAME_NOT_CHANGED;
+      } else {
+        res.username = WsiteResult.SUCCESS;
+        newUsername = username;
+        changed.add("username");
+      }
     }
-    if (username == null || !Utils.checkUsername(username)) {
-      return WsiteResult.USER_INVALID_USERNAME;
+    String newEmailAddress = null;
+    if (emailAddress != null) {
+      if (!Utils.checkEmailAddress(emailAddress)) {
+        res.emailAddress = WsiteResult.USER_INVALID_EMAIL_ADDRESS;
+      } else if (user.emailAddress.equals(emailAddress)) {
+        res.emailAddress = WsiteResult.USER_EMAIL_ADDRESS_NOT_CHANGED;
+      } else {
+        res.emailAddress = WsiteResult.SUCCESS;
+        newEmailAddress = emailAddress;
+        changed.add("email address");
+      }
     }
-    if (user.username.equals(username)) {
-      return WsiteResult.USER_USERNAME_NOT_CHANGED;
+    String newPassword = null;
+    if (password != null) {
+      if (!passwordPattern.matcher(new String(password)).matches()) {
+        res.password = WsiteResult.USER_INVALID_PASSWORD;
+      } else {
+        // checking a password attempt clears the array. create a temporary one in case the passwords don't match
+        char[] temp = Arrays.copyOf(password, password.length);
+        if (hashManager.check(password, user.password)) {
+          Arrays.fill(temp, ' ');
+          res.password = WsiteResult.USER_PASSWORD_NOT_CHANGED;
+        } else {
+          res.password = WsiteResult.SUCCESS;
+          newPassword = hashManager.generate(temp).compileAsHexString();
+          changed.add("password");
+        }
+      }
     }
-    User uCheck = userRepo.selectFromUsername(username);
-    if (uCheck != null) {
-      return WsiteResult.USER_USERNAME_CONFLICT;
+    Boolean newOperator = null;
+    if (operator != null) {
+      if (user.operator == operator) {
+        res.operator = WsiteResult.USER_OPERATOR_NOT_CHANGED;
+      } else {
+        res.operator = WsiteResult.SUCCESS;
+        newOperator = operator;
+        changed.add("operator status");
+      }
     }
-    logger.info("Updating username of user id {} and username {} to {}", user.id, user.username, username);
-    user.username = username;
-    userRepo.update(user);
-    return WsiteResult.SUCCESS;
+    if (res.getFirstProblem() == null && !changed.isEmpty()) {
+      UserRepository.Patch patch = userRepo.patch(id, newUsername, newEmailAddress, newPassword, newOperator);
+      if (patch.usernameConflict) {
+        res.username = WsiteResult.USER_USERNAME_CONFLICT;
+      }
+      if (patch.emailAddressConflict) {
+        res.emailAddress = WsiteResult.USER_EMAIL_ADDRESS_CONFLICT;
+      }
+      if (!patch.updated && res.getFirstProblem() == null) {
+        // deleted since it was looked up
+        res.result = WsiteResult.USER_ID_NOT_FOUND;
+        return res;
+      }
+    }
+    WsiteResult problem = res.getFirstProblem();
+    res.result = problem == null ? WsiteResult.SUCCESS : problem;
+    if (problem == null && !changed.isEmpty()) {
+      logger.info("Updated {} of user id {} and username {}", String.join(", ", changed), user.id, user.username);
+      loginCache.invalidateUser(id);
+      postEvent(new WsiteEvent.UserUpdated(this, id));
+    }
+    return res;
   }
 
-  public WsiteResult updateUserEmailAddress(UUID id, String emailAddress) {
-    User user = userRepo.selectFromId(id);
-    if (user == null) {
-      return WsiteResult.USER_ID_NOT_FOUND;
+  public WsiteResult updateUserUsername(UUID id, String username) {
+    if (username == null) {
+      return WsiteResult.USER_INVALID_USERNAME;
     }
-    if (emailAddress == null || !Utils.checkEmailAddress(emailAddress)) {
+    UserUpdateResult res = updateUserFields(id, username, null, null, null);
+    return res.result == WsiteResult.SUCCESS ? res.username : res.result;
+  }
+
+  public WsiteResult updateUserEmailAddress(UUID id, String emailAddress) {
+    if (emailAddress == null) {
       return WsiteResult.USER_INVALID_EMAIL_ADDRESS;
     }
-    if (user.emailAddress.equals(emailAddress)) {
-      return WsiteResult.USER_EMAIL_ADDRESS_NOT_CHANGED;
-    }
-    User uCheck = userRepo.selectFromEmailAddress(emailAddress);
-    if (uCheck != null) {
-      return WsiteResult.USER_EMAIL_ADDRESS_CONFLICT;
-    }
-    logger.info("Updating email address of user id {} and username {} to {} from {}",
-        user.id, user.username, emailAddress, user.emailAddress);
-    user.emailAddress = emailAddress;
-    userRepo.update(user);
-    return WsiteResult.SUCCESS;
+    UserUpdateResult res = updateUserFields(id, null, emailAddress, null, null);
+    return res.result == WsiteResult.SUCCESS ? res.emailAddress : res.result;
   }
 
   public WsiteResult updateUserPassword(UUID id, char[] password) {
-    User user = userRepo.selectFromId(id);
-    if (user == null) {
-      return WsiteResult.USER_ID_NOT_FOUND;
-    }
-    if (!passwordPattern.matcher(new String(password)).matches()) {
+    if (password == null) {
       return WsiteResult.USER_INVALID_PASSWORD;
     }
-    // checking a password attempt clears the array. create a temporary one in case the passwords don't match
-    char[] temp = Arrays.copyOf(password, password.length);
-    if (hashManager.check(password, user.password)) {
-      Arrays.fill(temp, ' ');
-      return WsiteResult.USER_PASSWORD_NOT_CHANGED;
-    }
-    user.password = hashManager.generate(temp).compileAsHexString();
-    logger.info("Updating password of user id {} and username {}", user.id, user.username);
-    userRepo.update(user);
-    return WsiteResult.SUCCESS;
+    UserUpdateResult res = updateUserFields(id, null, null, password, null);
+    return res.result == WsiteResult.SUCCESS ? res.password : res.result;
   }
 
   public WsiteResult updateUserOperator(UUID id, boolean operator) {
-    User user = userRepo.selectFromId(id);
-    if (user == null) {
-      return WsiteResult.USER_ID_NOT_FOUND;
-    }
-    if (user.operator == operator) {
-      return WsiteResult.USER_OPERATOR_NOT_CHANGED;
-    }
-    user.operator = operator;
-    logger.info("Updating user's operator status to {} with id {} and username {}",
-        user.operator, user.id, user.username);
-    userRepo.update(user);
-    return WsiteResult.SUCCESS;
+    UserUpdateResult res = updateUserFields(id, null, null, null, operator);
+    return res.result == WsiteResult.SUCCESS ? res.operator : res.result;
   }
 
   public WsiteResult updateUser(UUID id, String username, String email, char[] password, boolean operator) {
-    WsiteResult usernameRes = updateUserUsername(id, username);
-    if (usernameRes != WsiteResult.SUCCESS && usernameRes != WsiteResult.USER_USERNAME_NOT_CHANGED) {
-      return usernameRes;
+    if (password != null && password.length == 0) {
+      password = null;
     }
-    WsiteResult emailRes = updateUserEmailAddress(id, email);
-    if (emailRes != WsiteResult.SUCCESS && emailRes != WsiteResult.USER_EMAIL_ADDRESS_NOT_CHANGED) {
-      return emailRes;
-    }
-    if (password != null && password.length > 0) {
-      WsiteResult passwordRes = updateUserPassword(id, password);
-      if (passwordRes != WsiteResult.SUCCESS && passwordRes != WsiteResult.USER_PASSWORD_NOT_CHANGED) {
-        return passwordRes;
-      }
-    }
-    WsiteResult operatorRes = updateUserOperator(id, operator);
-    if (operatorRes != WsiteResult.SUCCESS && operatorRes != WsiteResult.USER_OPERATOR_NOT_CHANGED) {
-      return operatorRes;
-    }
-    return WsiteResult.SUCCESS;
+    return updateUserFields(id, username, email, password, operator).result;
   }
 
   public WsiteResult deleteUser(UUID id) {
@@ -263,6 +344,8 @@ public class WsiteService implements Runnable {
     }
     logger.info("Deleting user with id {} username {}", user.id, user.username);
     userRepo.delete(id);
+    loginCache.invalidateUser(id);
+    postEvent(new WsiteEvent.UserDeleted(this, id));
     return WsiteResult.SUCCESS;
   }
 
@@ -279,11 +362,12 @@ public class WsiteService implements Runnable {
   }
 
   public int getNumberOfUsers() {
-    return userRepo.selectNumberOfUsers();
+    return userRepo.getCount();
   }
 
-  public List<User> getUsers(int limit, int page, UserRepository.OrderingScheme orderingScheme, boolean descending) {
-    return userRepo.selectAll(limit, page, orderingScheme, descending);
+  public List<Keyset.Row<User>> getUsers(int limit, int page, String after, String before,
+                                         UserRepository.OrderingScheme orderingScheme, boolean descending) {
+    return userRepo.selectAll(limit, page, after, before, orderingScheme, descending);
   }
 
   public WsiteResult createLogin(String query, char[] password, long minutesUntilExpire, String userAgent,
@@ -317,6 +401,8 @@ public class WsiteService implements Runnable {
     Login lCheck = loginRepo.selectFromClientInfo(user.id, userAgent, ipAddress);
     if (lCheck != null) {
       loginRepo.delete(lCheck.token);
+      loginCache.invalidate(lCheck.token);
+      postEvent(new WsiteEvent.LoginDeleted(this, lCheck.token));
     }
     Login login = new Login();
     login.token = Utils.hexStringFromBytes(hashManager.fillBytes(new byte[Reference.LOGIN_TOKEN_LENGTH / 2]));
@@ -339,13 +425,32 @@ public class WsiteService implements Runnable {
     logger.info("Deleting login token from user {}, user agent {}, and ip {}",
         login.userId, login.userAgent, login.ipAddress);
     loginRepo.delete(token);
+    loginCache.invalidate(token);
+    postEvent(new WsiteEvent.LoginDeleted(this, token));
     return WsiteResult.SUCCESS;
   }
 
+  public Login getLogin(String token) {
+    return loginRepo.selectFromToken(token);
+  }
+
   public User getUserFromLoginToken(String token) {
+    if (token == null) {
+      return null;
+    }
+    User user = loginCache.get(token);
+    if (user != null) {
+      return user;
+    }
+    long generation = loginCache.getGeneration();
     Login login = loginRepo.selectFromToken(token);
-    if (login != null) {
-      return userRepo.selectFromId(login.userId);
+    // expired logins may not have been cleaned up yet
+    if (login != null && login.expirationDate.isAfter(Instant.now())) {
+      user = userRepo.selectFromId(login.userId);
+      if (user != null) {
+        loginCache.put(login, user, generation);
+      }
+      return user;
     }
     return null;
   }
@@ -360,7 +465,7 @@ public class WsiteService implements Runnable {
     if (page.syntax == null) {
       page.syntax = Page.Syntax.PLAIN;
     }
-    return page;
+    return PageRenderer.render(page);
   }
 
   public WsiteResult createNewPage(Page page) {
@@ -374,7 +479,16 @@ public class WsiteService implements Runnable {
     page.published = Instant.now();
     page.lastEdited = null;
     logger.info("Creating new page {}...", page.path);
-    pageRepo.insert(preparePage(page));
+    try {
+      pageRepo.insert(preparePage(page));
+    } catch (DuplicateKeyException e) {
+      // created by someone else since it was checked
+      return WsiteResult.PAGE_PATH_CONFLICT;
+    }
+    pagePaths.add(page.path);
+    pageCache.invalidate(page.path);
+    cachePage(page);
+    exportPage(page.path);
     return WsiteResult.SUCCESS;
   }
 
@@ -399,12 +513,31 @@ public class WsiteService implements Runnable {
         return WsiteResult.PAGE_PATH_CONFLICT;
       }
       logger.info("Updating page {} to {}...", origPath, newPage.path);
-      pageRepo.delete(origPath);
-      pageRepo.insert(newPage);
+      try {
+        if (!pageRepo.rename(origPath, newPage)) {
+          // deleted since it was looked up
+          return WsiteResult.PAGE_PATH_NOT_FOUND;
+        }
+      } catch (DuplicateKeyException e) {
+        return WsiteResult.PAGE_PATH_CONFLICT;
+      }
+      // the path as it's stored, which is what it was cached and exported under
+      pagePaths.remove(oldPage.path);
+      pagePaths.add(newPage.path);
+      pageCache.invalidate(oldPage.path);
+      exportPage(oldPage.path);
     } else {
       logger.info("Updating page {}...", page.path);
       pageRepo.update(newPage);
+      // the old path was cached and exported under a key of its own if it only matches ignoring non-ASCII case
+      if (!PageCache.normalizePath(oldPage.path).equals(PageCache.normalizePath(newPage.path))) {
+        pageCache.invalidate(oldPage.path);
+        exportPage(oldPage.path);
+      }
     }
+    pageCache.invalidate(newPage.path);
+    cachePage(newPage);
+    exportPage(newPage.path);
     return WsiteResult.SUCCESS;
   }
 
@@ -419,15 +552,166 @@ public class WsiteService implements Runnable {
     }
     logger.info("Deleting page {}...", path);
     pageRepo.delete(page.path);
+    pagePaths.remove(page.path);
+    pageCache.invalidate(page.path);
+    exportPage(page.path);
     return WsiteResult.SUCCESS;
   }
 
+  // rendering and compressing is done while writing, so that the first request doesn't have to
+  private void cachePage(Page page) {
+    // too large to be cached even before it's rendered, it's streamed whenever it's asked for instead
+    if (!pageCache.canHold(page.rendered.length() * 2L)) {
+      return;
+    }
+    long generation = pageCache.getGeneration();
+    pageCache.put(page.path, Routes.PageGetRoute.createEntry(this, page), generation);
+  }
+
+  // the exported files are removed right away, and then exported again in the background
+  private void exportPage(String path) {
+    try {
+      pageExporter.invalidate(path);
+    } catch (IOException e) {
+      logger.error("Could not remove exported page " + path, e);
+    }
+    if (pageExporter.isEnabled()) {
+      scheduledExecutorService.execute(() -> {
+        try {
+          exportPages(false);
+        } catch (IOException e) {
+          logger.error("Could not export pages", e);
+        }
+      });
+    }
+  }
+
+  // templates can change between builds, so exports are only kept for the build that made them
+  private String getExportStamp() {
+    return String.join("\0", config.siteName, config.databaseUrl, config.indexPage,
+        String.valueOf(PageRenderer.VERSION), String.valueOf(Reference.RELEASED.toEpochMilli()));
+  }
+
+  private String getSnapshotStamp() {
+    return String.join("\0", pageCacheStamp, String.valueOf(PageRenderer.VERSION),
+        String.valueOf(Reference.RELEASED.toEpochMilli()));
+  }
+
+  private void saveSnapshot() throws IOException {
+    CacheSnapshot snapshot = new CacheSnapshot(getSnapshotStamp());
+    for (Map.Entry<String, PageCache.Entry> cached : pageCache.getEntries()) {
+      CacheSnapshot.PageEntry page = new CacheSnapshot.PageEntry();
+      page.path = cached.getKey();
+      page.etag = cached.getValue().etag;
+      page.lastModified = cached.getValue().lastModified.toEpochMilli();
+      page.gzipped = cached.getValue().gzipped;
+      snapshot.pages.add(page);
+    }
+    for (Login login : loginCache.getLogins()) {
+      CacheSnapshot.LoginEntry entry = new CacheSnapshot.LoginEntry();
+      entry.token = login.token;
+      entry.userId = login.userId.toString();
+      entry.expirationDate = login.expirationDate.toEpochMilli();
+      snapshot.logins.add(entry);
+    }
+    snapshot.write(resolvePath(Reference.SNAPSHOT_FILE));
+    logger.info("Saved {} cached pages and {} logins to snapshot", snapshot.pages.size(), snapshot.logins.size());
+  }
+
+  // pages are only restored if they haven't been edited since the snapshot was written
+  private void loadSnapshot() throws IOException {
+    Path snapshotFile = resolvePath(Reference.SNAPSHOT_FILE);
+    CacheSnapshot snapshot = CacheSnapshot.read(snapshotFile);
+    Files.deleteIfExists(snapshotFile);
+    if (snapshot == null || !snapshot.stamp.equals(getSnapshotStamp())) {
+      return;
+    }
+    Map<String, Instant> lastModified = new HashMap<>();
+    getPageLastModified().forEach((path, modified) -> lastModified.put(PageCache.normalizePath(path), modified));
+    long generation = pageCache.getGeneration();
+    int count = 0;
+    for (CacheSnapshot.PageEntry page : snapshot.pages) {
+      Instant modified = lastModified.get(page.path);
+      if (modified != null && modified.toEpochMilli() == page.lastModified) {
+        String contents = new String(IOUtils.gunzip(page.gzipped), StandardCharsets.UTF_8);
+        if (pageCache.put(page.path, new PageCache.Entry(contents, page.gzipped, page.etag, modified), generation)) {
+          count++;
+        }
+      }
+    }
+    logger.info("Restored {} of {} cached pages from snapshot", count, snapshot.pages.size());
+
+    // logins are checked against the database all at once, and only restored if they still exist
+    if (!snapshot.logins.isEmpty()) {
+      List<String> tokens = new ArrayList<>();
+      snapshot.logins.forEach(login -> tokens.add(login.token));
+      Map<UUID, User> users = new HashMap<>();
+      Instant now = Instant.now();
+      long loginGeneration = loginCache.getGeneration();
+      count = 0;
+      for (Login login : loginRepo.selectFromTokens(tokens)) {
+        if (login.expirationDate.isAfter(now)) {
+          User user = users.computeIfAbsent(login.userId, userRepo::selectFromId);
+          if (user != null && loginCache.put(login, user, loginGeneration)) {
+            count++;
+          }
+        }
+      }
+      logger.info("Restored {} of {} logins from snapshot", count, snapshot.logins.size());
+    }
+  }
+
+  public PageExporter.Result exportPages(boolean full) throws IOException {
+    logger.info("Exporting pages...");
+    PageExporter.Result result = pageExporter.export(getExportStamp(), full);
+    logger.info("Exported {} pages, removed {}, {} unchanged", result.exported, result.removed, result.unchanged);
+    return result;
+  }
+
+  public void clearPageExport() throws IOException {
+    logger.info("Clearing exported pages...");
+    pageExporter.clear();
+  }
+
+  public Map<String, Instant> getPageLastModified() {
+    return pageRepo.selectLastModified();
+  }
+
+  // every existing path is kept in memory, so that requests for nonexistent pages never reach the database
+  public boolean mightPageExist(String path) {
+    return pagePaths.mightContain(path);
+  }
+
   public Page getPage(String path) {
-    return pageRepo.selectFromPath(path);
+    if (!mightPageExist(path)) {
+      return null;
+    }
+    Page page = pageRepo.selectFromPath(path);
+    if (page != null && PageRenderer.isOutdated(page)) {
+      PageRenderer.render(page);
+      pageRepo.updateRendered(page.path, page.rendered, page.rendererVersion);
+    }
+    return page;
+  }
+
+  public int rerenderOutdatedPages() {
+    int count = 0;
+    String lastPath = null;
+    List<Page> pages;
+    do {
+      pages = pageRepo.selectOutdated(PageRenderer.VERSION, lastPath, Reference.PAGE_RENDER_BATCH_SIZE);
+      for (Page page : pages) {
+        PageRenderer.render(page);
+        pageRepo.updateRendered(page.path, page.rendered, page.rendererVersion);
+        lastPath = page.path;
+        count++;
+      }
+    } while (pages.size() == Reference.PAGE_RENDER_BATCH_SIZE);
+    return count;
   }
 
-  public List<PageRepository.PageSummary> listPages(int limit, int page, PageRepository.OrderingScheme orderingScheme, boolean descending) {
-    return pageRepo.selectList(limit, page, orderingScheme, descending);
+  public List<PageRepository.PageSummary> listPages(int limit, int page, String after, String before, PageRepository.OrderingScheme orderingScheme, boolean descending) {
+    return pageRepo.selectList(limit, page, after, before, orderingScheme, descending);
   }
 
   public int getPageCount() {
@@ -452,6 +736,7 @@ public class WsiteService implements Runnable {
     } else {
       Files.copy(input, outputFile, StandardCopyOption.REPLACE_EXISTING);
     }
+    staticFileCache.compress(outputFile);
     return WsiteResult.SUCCESS;
   }
 
@@ -488,6 +773,10 @@ public class WsiteService implements Runnable {
       Files.write(newAssetFile, contents, StandardOpenOption.CREATE);
       IOUtils.cleanupEmptyDirectories(resolvePath(Reference.STATIC_DIR));
     }
+    if (!assetFile.equals(newAssetFile)) {
+      staticFileCache.removeCompressed(assetFile);
+    }
+    staticFileCache.compress(newAssetFile);
     return WsiteResult.SUCCESS;
   }
 
@@ -521,6 +810,7 @@ public class WsiteService implements Runnable {
     logger.info("Deleting asset from <{}>...", toLocalPath(assetFile));
     Files.delete(assetFile);
     IOUtils.cleanupEmptyDirectories(resolvePath(Reference.STATIC_DIR));
+    staticFileCache.removeCompressed(assetFile);
     return WsiteResult.SUCCESS;
   }
 
@@ -561,7 +851,13 @@ public class WsiteService implements Runnable {
     // TODO: Is it a good idea to have a script from wsite.js reload that same script?
     protectedAssets.forEach(path -> {
       logger.info("Reloading <{}>...", path);
-      IOUtils.copyFromResource(path, getAssetPath(path, false), true);
+      Path assetFile = getAssetPath(path, false);
+      IOUtils.copyFromResource(path, assetFile, true);
+      try {
+        staticFileCache.compress(assetFile);
+      } catch (IOException e) {
+        logger.error("Could not compress <" + path + ">", e);
+      }
     });
   }
 
@@ -569,6 +865,30 @@ public class WsiteService implements Runnable {
     return templateEngine.render(new ModelAndView(dataModel, templateName));
   }
 
+  /**
+   * Renders a template whose output only depends on site-wide state, like the site name, and keeps the result until the
+   * service is created again. That always happens when the configuration changes.
+   */
+  public String parseCachedTemplate(String key, String templateName, Supplier<Object> dataModel) {
+    return cachedTemplates.computeIfAbsent(key, k -> parseTemplate(templateName, dataModel.get()));
+  }
+
+  /**
+   * Renders a template directly into a writer, so that the whole output never has to be held in memory. Falls back to
+   * {@link #parseTemplate(String, Object)} if a custom template engine has been specified.
+   */
+  public void writeTemplate(String templateName, Object dataModel, Writer writer) throws IOException {
+    if (freemarkerConfig == null) {
+      writer.write(parseTemplate(templateName, dataModel));
+      return;
+    }
+    try {
+      freemarkerConfig.getTemplate(templateName).process(dataModel, writer);
+    } catch (TemplateException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
   public boolean hasBeenCreated() {
     return created;
   }
@@ -618,6 +938,19 @@ public class WsiteService implements Runnable {
       newConfig.clear();
     }
 
+    // rendered pages survive restarts, but not a change of the site name (which is baked into them) or database
+    String pageCacheStamp = config.siteName + '\0' + config.databaseUrl;
+    if (!pageCacheStamp.equals(this.pageCacheStamp)) {
+      if (this.pageCacheStamp != null) {
+        logger.info("Clearing page cache...");
+      }
+      pageCache.clear();
+      loginCache.clear();
+      this.pageCacheStamp = pageCacheStamp;
+    }
+
+    cachedTemplates.clear();
+
     logger.info("Connecting to SQL database...");
     if (Utils.isNullOrEmpty(config.databaseUrl)) {
       throw new IllegalArgumentException("Database URL must be specified");
@@ -626,22 +959,59 @@ public class WsiteService implements Runnable {
     if (!resolvedDatabaseUrl.equals(config.databaseUrl)) {
       logger.info("Database URL path has been resolved");
     }
+    SQLDialect dialect = null;
+    if (!Utils.isNullOrEmpty(config.databaseDialect)) {
+      dialect = Database.parseDialect(config.databaseDialect);
+      if (dialect == null) {
+        throw new IllegalArgumentException("Unsupported database dialect: " + config.databaseDialect);
+      }
+    }
+    if (config.databasePoolMinSize < 0 || config.databasePoolMaxSize < 1 ||
+        config.databasePoolMinSize > config.databasePoolMaxSize || config.databasePoolTimeout < 0) {
+      throw new IllegalArgumentException("Invalid database connection pool settings");
+    }
+    ConnectionPool.ConnectionFactory connectionFactory;
     if (config.databaseProperties != null) {
-      conn = DriverManager.getConnection(resolvedDatabaseUrl, config.databaseProperties);
+      connectionFactory = () -> DriverManager.getConnection(resolvedDatabaseUrl, config.databaseProperties);
     } else if (config.databaseUsername != null && config.databasePassword != null) {
-      conn = DriverManager.getConnection(resolvedDatabaseUrl, config.databaseUsername, config.databasePassword);
+      connectionFactory = () -> DriverManager.getConnection(resolvedDatabaseUrl, config.databaseUsername, config.databasePassword);
     } else {
-      conn = DriverManager.getConnection(resolvedDatabaseUrl);
-    }
-    dslContext = DSL.using(conn);
+      connectionFactory = () -> DriverManager.getConnection(resolvedDatabaseUrl);
+    }
+    if (!Database.SqliteSettings.isValidSynchronousLevel(config.databaseSqliteSynchronous) ||
+        config.databaseSqliteCacheSize < 0 || config.databaseSqliteMmapSize < 0 || config.databaseWriteBatchSize < 0) {
+      throw new IllegalArgumentException("Invalid SQLite database settings");
+    }
+    Database.SqliteSettings sqliteSettings = new Database.SqliteSettings();
+    sqliteSettings.synchronous = config.databaseSqliteSynchronous;
+    sqliteSettings.cacheSize = config.databaseSqliteCacheSize;
+    sqliteSettings.mmapSize = config.databaseSqliteMmapSize;
+    sqliteSettings.writeBatchSize = config.databaseWriteBatchSize;
+    queryMonitor = new QueryMonitor(config.databaseSlowQueryThreshold, Reference.QUERY_MONITOR_MAX_STATEMENTS);
+    database = Database.open(resolvedDatabaseUrl, dialect, connectionFactory, config.databasePoolMinSize,
+        config.databasePoolMaxSize, config.databasePoolTimeout, sqliteSettings, queryMonitor);
+    logger.info("Opened database connection pool ({} to {} connections, {} dialect)", config.databasePoolMinSize,
+        config.databasePoolMaxSize, database.getDialect());
 
     logger.info("Initializing repositories...");
-    userRepo = new UserRepository(dslContext);
-    pageRepo = new PageRepository(dslContext);
-    loginRepo = new LoginRepository(dslContext);
+    userRepo = new CachingUserRepository(database, Reference.USER_ROW_CACHE_CAPACITY);
+    pageRepo = new CachingPageRepository(database, Reference.PAGE_ROW_CACHE_CAPACITY);
+    loginRepo = new LoginRepository(database);
     userRepo.create();
     pageRepo.create();
     loginRepo.create();
+    new Migrator(database, logger, Reference.MIGRATION_BATCH_SIZE).migrate(Migrations.ALL);
+
+    pagePaths = new PagePathFilter(pageRepo.selectPaths());
+    pageExporter.load(getExportStamp(), config.indexPage);
+    // the cache only starts off empty when the process has just been started
+    if (pageCache.getCount() == 0) {
+      try {
+        loadSnapshot();
+      } catch (IOException e) {
+        logger.error("Could not load cache snapshot", e);
+      }
+    }
 
     logger.info("Compiling username and password requirement patterns...");
     usernamePattern = Pattern.compile(config.usernamePattern);
@@ -665,11 +1035,33 @@ public class WsiteService implements Runnable {
     logger.info("Scheduling continuous login cleanup task...");
     scheduledExecutorService.scheduleWithFixedDelay(() -> {
       int changed = loginRepo.deleteAllExpired();
+      loginCache.removeExpired();
       if (changed > 0) {
         logger.info("Deleted {} expired login credentials", changed);
       }
     }, 0, 1, TimeUnit.MINUTES);
     logger.info("Login cleanup will commence every minute");
+    // rolled log files are indexed soon after they roll rather than on the first search that needs them
+    scheduledExecutorService.scheduleWithFixedDelay(() -> {
+      try {
+        logSearcher.updateIndexes();
+      } catch (IOException e) {
+        logger.error("Could not update log file indexes", e);
+      }
+    }, 0, Reference.LOG_INDEX_UPDATE_INTERVAL, TimeUnit.MINUTES);
+    scheduledExecutorService.execute(() -> {
+      int changed = rerenderOutdatedPages();
+      if (changed > 0) {
+        logger.info("Re-rendered {} pages with an outdated renderer version", changed);
+      }
+      if (pageExporter.isEnabled()) {
+        try {
+          exportPages(false);
+        } catch (IOException e) {
+          logger.error("Could not export pages", e);
+        }
+      }
+    });
 
     Path staticDir = resolvePath(Reference.STATIC_DIR);
     logger.info("Copying internal resources...");
@@ -680,10 +1072,14 @@ public class WsiteService implements Runnable {
     IOUtils.copyFromResource("scripts/wsite.js", staticAssetsDir.resolve("scripts/wsite.js"), false);
     IOUtils.copyFromResource("scripts/cookies.min.js", staticAssetsDir.resolve("scripts/cookies.min.js"), false);
     IOUtils.touch(staticAssetsDir.resolve("css/main.css"));
+    logger.info("Compressing static files...");
+    int compressed = staticFileCache.compressAll();
+    if (compressed > 0) {
+      logger.info("Compressed {} static files", compressed);
+    }
 
     logger.info("Configuring Spark service...");
     IOUtils.mkdirs(staticDir);
-    Spark.staticFiles.externalLocation(staticDir.toString());
     logger.info("Setting port to {}...", config.port);
     Spark.port(config.port);
 
@@ -696,6 +1092,8 @@ public class WsiteService implements Runnable {
     Spark.init();
     Spark.awaitInitialization();
 
+    // static files are served by a filter rather than Spark's own handler, which doesn't support conditional requests
+    Spark.before(new Routes.StaticFileFilter(this, staticFileCache));
     Spark.notFound(Routes.generateHaltBody(this, 404));
     Spark.internalServerError(Routes.generateHaltBody(this, 500));
     Routes.UserFilter userFilter = new Routes.UserFilter(this);
@@ -711,6 +1109,8 @@ public class WsiteService implements Runnable {
     Spark.get("/logout", new Routes.LogoutGetRoute(this));
 
     if (getNumberOfUsers() > 0) {
+      // exported pages are only served once the site has been set up, and take precedence over the database
+      Spark.before(new Routes.StaticFileFilter(this, pageExporter.getFileCache()));
       logger.info("Adding API routes...");
       Spark.get("/api/asset/fetch", new ApiRoutes.GetAssetRoute(this));
       Spark.get("/api/asset/exists", new ApiRoutes.AssetExistsRoute(this));
@@ -736,6 +1136,12 @@ public class WsiteService implements Runnable {
       Spark.post("/api/page/delete", new ApiRoutes.PageDeleteRoute(this));
       Spark.get("/api/page/list", new ApiRoutes.PageListRoute(this));
       Spark.get("/api/page/count", new ApiRoutes.PageCountRoute(this));
+      Spark.post("/api/page/export", new ApiRoutes.PageExportRoute(this));
+      Spark.post("/api/page/clearExport", new ApiRoutes.PageClearExportRoute(this));
+      Spark.get("/api/log/search", new ApiRoutes.LogSearchRoute(this));
+      Spark.get("/api/database/stats", new ApiRoutes.DatabaseStatsRoute(this));
+      Spark.get("/api/database/queries", new ApiRoutes.DatabaseQueriesRoute(this));
+      Spark.post("/api/database/clearQueries", new ApiRoutes.DatabaseClearQueriesRoute(this));
       Spark.post("/api/login/create", new ApiRoutes.LoginCreateRoute(this));
       Spark.post("/api/login/delete", new ApiRoutes.LoginDeleteRoute(this));
       Spark.get("/api/config/fetch", new ApiRoutes.ConfigGetRoute(this));
@@ -802,6 +1208,7 @@ public class WsiteService implements Runnable {
     logger.warn("Destroying Wsite service...");
 
     if (consoleRoute != null) {
+      WsiteLogbackAppender.getInstance().setConsoleRoute(null);
       consoleRoute.disconnectAll();
       logger.info("Disconnecting all console websocket sessions...");
       consoleRoute = null;
@@ -818,6 +1225,14 @@ public class WsiteService implements Runnable {
       scheduledExecutorService = null;
     }
 
+    if (pageRepo != null) {
+      try {
+        saveSnapshot();
+      } catch (IOException e) {
+        logger.error("Could not save cache snapshot", e);
+      }
+    }
+
     if (eventManager != null) {
       logger.info("Clearing event manager...");
       eventManager.dropAllListeners();
@@ -826,11 +1241,10 @@ public class WsiteService implements Runnable {
     logger.info("Saving settings...");
     save();
 
-    if (conn != null) {
+    if (database != null) {
       logger.info("Closing repositories...");
-      conn.close();
-      conn = null;
-      dslContext = null;
+      database.close();
+      database = null;
       userRepo = null;
       pageRepo = null;
       loginRepo = null;
@@ -913,6 +1327,7 @@ public class WsiteService implements Runnable {
     public Logger logger;
     public HashManager hashManager;
     public TemplateEngine templateEngine;
+    public Configuration freemarkerConfig;
     public List<String> protectedAssets;
 
     public Builder() {
@@ -920,6 +1335,7 @@ public class WsiteService implements Runnable {
       logger = null;
       hashManager = null;
       templateEngine = null;
+      freemarkerConfig = null;
       protectedAssets = new ArrayList<>();
     }
 
@@ -948,6 +1364,11 @@ public class WsiteService implements Runnable {
       return this;
     }
 
+    public Builder setFreemarkerConfig(Configuration freemarkerConfig) {
+      this.freemarkerConfig = freemarkerConfig;
+      return this;
+    }
+
     public Builder addProtectedAssets(String first, String... others) {
       protectedAssets.add(first);
       Collections.addAll(protectedAssets, others);
@@ -965,11 +1386,15 @@ public class WsiteService implements Runnable {
         hashManager = HashManager.builder().build();
       }
       if (templateEngine == null) {
-        Configuration freemarkerConfig = new Configuration(Configuration.VERSION_2_3_26);
-        freemarkerConfig.setTemplateLoader(
-            new ClassTemplateLoader(WsiteService.class.getClassLoader(), Reference.TEMPLATES_DIR)
-        );
-        freemarkerConfig.setLocalizedLookup(false);
+        if (freemarkerConfig == null) {
+          freemarkerConfig = new Configuration(Configuration.VERSION_2_3_26);
+          freemarkerConfig.setTemplateLoader(
+              new ClassTemplateLoader(WsiteService.class.getClassLoader(), Reference.TEMPLATES_DIR)
+          );
+          freemarkerConfig.setLocalizedLookup(false);
+          // the default handler writes the error into the output, which may already be going out to the client
+          freemarkerConfig.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
+        }
         templateEngine = new FreeMarkerEngine(freemarkerConfig);
       }
       if (protectedAssets.isEmpty()) {
@@ -984,7 +1409,14 @@ public class WsiteService implements Runnable {
       service.rootDir = rootDirectory.toAbsolutePath().normalize();
       service.hashManager = hashManager;
       service.templateEngine = templateEngine;
+      service.freemarkerConfig = freemarkerConfig;
       service.protectedAssets.addAll(protectedAssets);
+      service.staticFileCache = new StaticFileCache(service.resolvePath(Reference.STATIC_DIR),
+          service.resolvePath(Reference.COMPRESSED_DIR));
+      service.pageExporter = new PageExporter(service, service.resolvePath(Reference.EXPORT_DIR),
+          service.resolvePath(Reference.EXPORT_COMPRESSED_DIR), service.resolvePath(Reference.EXPORT_MANIFEST_FILE));
+      service.logSearcher = new LogSearcher(service.resolvePath(Reference.LOGS_DIR),
+          service.resolvePath(Reference.LOG_INDEX_DIR));
       return service;
     }
   }
@@ -0,0 +1,85 @@
+package me.whizvox.wsite.database;
+
+import me.whizvox.wsite.generated.tables.records.PagesRecord;
+
+import java.util.Collections;
+
+/**
+ * A {@link PageRepository} that keeps the most recently looked up pages in memory, by their path. Every call still gets
+ * a page of its own, since the callers change them before updating them.
+ */
+public class CachingPageRepository extends PageRepository {
+
+  private final EntityCache<String, PagesRecord> cache;
+
+  public CachingPageRepository(Database database, int capacity) {
+    super(database);
+    // paths are looked up case-insensitively, so they're cached that way too
+    cache = new EntityCache<>("pages", capacity, record -> foldCase(record.getPath()), Collections.emptyList());
+  }
+
+  @Override
+  public boolean drop() {
+    try {
+      return super.drop();
+    } finally {
+      cache.clear();
+    }
+  }
+
+  @Override
+  public boolean insert(Page page) {
+    try {
+      return super.insert(page);
+    } finally {
+      cache.invalidate(foldCase(page.path));
+    }
+  }
+
+  @Override
+  public boolean update(Page page) {
+    try {
+      return super.update(page);
+    } finally {
+      cache.invalidate(foldCase(page.path));
+    }
+  }
+
+  @Override
+  public boolean rename(String origPath, Page page) {
+    try {
+      return super.rename(origPath, page);
+    } finally {
+      cache.invalidate(foldCase(origPath));
+      cache.invalidate(foldCase(page.path));
+    }
+  }
+
+  @Override
+  public boolean delete(String path) {
+    try {
+      return super.delete(path);
+    } finally {
+      cache.invalidate(foldCase(path));
+    }
+  }
+
+  @Override
+  public boolean updateRendered(String path, String rendered, int rendererVersion) {
+    try {
+      return super.updateRendered(path, rendered, rendererVersion);
+    } finally {
+      cache.invalidate(foldCase(path));
+    }
+  }
+
+  @Override
+  protected PagesRecord fetchFromPath(String path) {
+    return cache.get(foldCase(path), () -> super.fetchFromPath(path));
+  }
+
+  public EntityCache.Stats getCacheStats() {
+    return cache.getStats();
+  }
+
+}
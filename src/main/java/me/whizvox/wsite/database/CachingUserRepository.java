@@ -0,0 +1,90 @@
+package me.whizvox.wsite.database;
+
+import me.whizvox.wsite.generated.tables.records.UsersRecord;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * A {@link UserRepository} that keeps the most recently looked up users in memory, by their id, username and email
+ * address. Every call still gets a user of its own, since the callers change them before updating them.
+ */
+public class CachingUserRepository extends UserRepository {
+
+  private static final int USERNAME = 0, EMAIL_ADDRESS = 1;
+
+  private final EntityCache<String, UsersRecord> cache;
+
+  public CachingUserRepository(Database database, int capacity) {
+    super(database);
+    cache = new EntityCache<>("users", capacity, UsersRecord::getId, Arrays.asList(
+        record -> foldCase(record.getUsername()),
+        record -> foldCase(record.getEmailAddress())
+    ));
+  }
+
+  @Override
+  public boolean drop() {
+    try {
+      return super.drop();
+    } finally {
+      cache.clear();
+    }
+  }
+
+  @Override
+  public boolean insert(User user) {
+    try {
+      return super.insert(user);
+    } finally {
+      cache.invalidate(user.id.toString());
+    }
+  }
+
+  @Override
+  public boolean update(User user) {
+    try {
+      return super.update(user);
+    } finally {
+      cache.invalidate(user.id.toString());
+    }
+  }
+
+  @Override
+  public Patch patch(UUID id, String username, String emailAddress, String password, Boolean operator) {
+    try {
+      return super.patch(id, username, emailAddress, password, operator);
+    } finally {
+      cache.invalidate(id.toString());
+    }
+  }
+
+  @Override
+  public boolean delete(UUID id) {
+    try {
+      return super.delete(id);
+    } finally {
+      cache.invalidate(id.toString());
+    }
+  }
+
+  @Override
+  protected UsersRecord fetchFromId(UUID id) {
+    return cache.get(id.toString(), () -> super.fetchFromId(id));
+  }
+
+  @Override
+  protected UsersRecord fetchFromUsername(String username) {
+    return cache.getUnique(USERNAME, foldCase(username), () -> super.fetchFromUsername(username));
+  }
+
+  @Override
+  protected UsersRecord fetchFromEmailAddress(String emailAddress) {
+    return cache.getUnique(EMAIL_ADDRESS, foldCase(emailAddress), () -> super.fetchFromEmailAddress(emailAddress));
+  }
+
+  public EntityCache.Stats getCacheStats() {
+    return cache.getStats();
+  }
+
+}
@@ -0,0 +1,207 @@
+package me.whizvox.wsite.database;
+
+import org.jooq.ConnectionProvider;
+import org.jooq.exception.DataAccessException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed-size pool of JDBC connections that jOOQ acquires one from for every query. A caller that can't get a
+ * connection within the timeout gets a {@link DataAccessException}, the same as it would for any other database error.
+ */
+public class ConnectionPool implements ConnectionProvider, AutoCloseable {
+
+  @FunctionalInterface
+  public interface ConnectionFactory {
+    Connection create() throws SQLException;
+  }
+
+  // how long each thread has waited for connections since it last asked, so that the wait can be put down to a query
+  private static final ThreadLocal<long[]> THREAD_WAIT_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+
+  private final String name;
+  private final ConnectionFactory factory;
+  private final int minSize;
+  private final int maxSize;
+  private final long timeoutMillis;
+  // most recently released first, so that the connections that are kept around are the ones in use
+  private final BlockingDeque<Connection> idle;
+  private final Semaphore permits;
+  private final AtomicInteger size;
+  private volatile boolean closed;
+
+  private final AtomicLong acquired;
+  private final AtomicLong created;
+  private final AtomicLong timeouts;
+  private final AtomicLong totalWaitNanos;
+  private final AtomicLong maxWaitNanos;
+
+  public ConnectionPool(String name, ConnectionFactory factory, int minSize, int maxSize, long timeoutMillis)
+      throws SQLException {
+    if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+      throw new IllegalArgumentException("Invalid connection pool size: " + minSize + " to " + maxSize);
+    }
+    this.name = name;
+    this.factory = factory;
+    this.minSize = minSize;
+    this.maxSize = maxSize;
+    this.timeoutMillis = timeoutMillis;
+    idle = new LinkedBlockingDeque<>();
+    permits = new Semaphore(maxSize, true);
+    size = new AtomicInteger(0);
+    closed = false;
+    acquired = new AtomicLong(0);
+    created = new AtomicLong(0);
+    timeouts = new AtomicLong(0);
+    totalWaitNanos = new AtomicLong(0);
+    maxWaitNanos = new AtomicLong(0);
+    try {
+      for (int i = 0; i < minSize; i++) {
+        idle.addLast(open());
+      }
+    } catch (SQLException e) {
+      close();
+      throw e;
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  private Connection open() throws SQLException {
+    Connection conn = factory.create();
+    size.incrementAndGet();
+    created.incrementAndGet();
+    return conn;
+  }
+
+  private void discard(Connection conn) {
+    size.decrementAndGet();
+    try {
+      conn.close();
+    } catch (SQLException ignored) {}
+  }
+
+  @Override
+  public Connection acquire() throws DataAccessException {
+    if (closed) {
+      throw new DataAccessException("The " + name + " connection pool has been closed");
+    }
+    long start = System.nanoTime();
+    try {
+      if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+        timeouts.incrementAndGet();
+        throw new DataAccessException("Timed out after " + timeoutMillis + " ms waiting for a connection from the " +
+            name + " pool");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DataAccessException("Interrupted while waiting for a connection from the " + name + " pool", e);
+    }
+    long waited = System.nanoTime() - start;
+    THREAD_WAIT_NANOS.get()[0] += waited;
+    totalWaitNanos.addAndGet(waited);
+    maxWaitNanos.accumulateAndGet(waited, Math::max);
+    try {
+      Connection conn;
+      while ((conn = idle.pollFirst()) != null) {
+        if (!conn.isClosed()) {
+          acquired.incrementAndGet();
+          return conn;
+        }
+        discard(conn);
+      }
+      conn = open();
+      acquired.incrementAndGet();
+      return conn;
+    } catch (SQLException e) {
+      permits.release();
+      throw new DataAccessException("Could not open a connection for the " + name + " pool", e);
+    }
+  }
+
+  /**
+   * @return How long the current thread has waited for connections from any pool since the last time this was called
+   */
+  public static long takeWaitNanos() {
+    long[] wait = THREAD_WAIT_NANOS.get();
+    long nanos = wait[0];
+    wait[0] = 0;
+    return nanos;
+  }
+
+  @Override
+  public void release(Connection conn) throws DataAccessException {
+    try {
+      if (closed || conn.isClosed()) {
+        discard(conn);
+      } else {
+        // a transaction that failed partway may have been left open
+        if (!conn.getAutoCommit()) {
+          conn.rollback();
+          conn.setAutoCommit(true);
+        }
+        idle.offerFirst(conn);
+      }
+    } catch (SQLException e) {
+      discard(conn);
+    } finally {
+      permits.release();
+    }
+  }
+
+  /**
+   * Closes every idle connection. Connections that are in use are closed as soon as they're released.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    Connection conn;
+    while ((conn = idle.pollFirst()) != null) {
+      discard(conn);
+    }
+  }
+
+  public Stats getStats() {
+    Stats stats = new Stats();
+    stats.name = name;
+    stats.minSize = minSize;
+    stats.maxSize = maxSize;
+    stats.size = size.get();
+    stats.idle = idle.size();
+    stats.active = maxSize - permits.availablePermits();
+    stats.waiting = permits.getQueueLength();
+    stats.acquired = acquired.get();
+    stats.created = created.get();
+    stats.timeouts = timeouts.get();
+    long count = acquired.get() + timeouts.get();
+    stats.averageWaitMillis = count == 0 ? 0 : totalWaitNanos.get() / count / 1000000.0;
+    stats.maxWaitMillis = maxWaitNanos.get() / 1000000.0;
+    return stats;
+  }
+
+  public static class Stats {
+    public String name;
+    public int minSize;
+    public int maxSize;
+    // number of open connections
+    public int size;
+    public int idle;
+    public int active;
+    public int waiting;
+    public long acquired;
+    public long created;
+    public long timeouts;
+    public double averageWaitMillis;
+    public double maxWaitMillis;
+  }
+
+}
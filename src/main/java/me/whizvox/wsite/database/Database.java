@@ -0,0 +1,212 @@
+package me.whizvox.wsite.database;
+
+import org.jooq.Configuration;
+import org.jooq.DSLContext;
+import org.jooq.ExecuteListener;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultConfiguration;
+import org.jooq.impl.DefaultExecuteListenerProvider;
+import org.jooq.tools.jdbc.JDBCUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Pooled access to the database, with one context for statements that write and another for ones that only read.
+ * Both are backed by the same pool, except with SQLite: it only allows a single writer at a time, so all writes go
+ * through a {@link WriteQueue} on a single connection rather than failing because the database is locked, while reads
+ * get a pool of their own.
+ */
+public class Database implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(Database.class);
+
+  // the dialect families the schema and every repository's statements are known to work with
+  private static final Set<SQLDialect> SUPPORTED_DIALECTS =
+      EnumSet.of(SQLDialect.SQLITE, SQLDialect.POSTGRES, SQLDialect.H2);
+
+  private final SQLDialect dialect;
+  private final ConnectionPool writePool;
+  private final ConnectionPool readPool;
+  private final DSLContext writeContext;
+  private final DSLContext readContext;
+  private final WriteQueue writeQueue;
+
+  private Database(SQLDialect dialect, ConnectionPool writePool, ConnectionPool readPool, int writeBatchSize,
+                   ExecuteListener listener) {
+    this.dialect = dialect;
+    this.writePool = writePool;
+    this.readPool = readPool;
+    writeContext = using(writePool, dialect, listener);
+    readContext = readPool == writePool ? writeContext : using(readPool, dialect, listener);
+    writeQueue = writeBatchSize > 0 ? new WriteQueue(writeContext, writeBatchSize) : null;
+  }
+
+  /**
+   * @return The supported dialect with the name, ignoring case, or null if there isn't one
+   */
+  public static SQLDialect parseDialect(String name) {
+    if (name == null) {
+      return null;
+    }
+    for (SQLDialect dialect : SQLDialect.values()) {
+      if (dialect.name().equalsIgnoreCase(name.trim()) && SUPPORTED_DIALECTS.contains(dialect.family())) {
+        return dialect;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param dialect What SQL to speak to the database, or null to tell from the URL
+   * @param listener Told about every statement executed through either context, or null
+   */
+  public static Database open(String url, SQLDialect dialect, ConnectionPool.ConnectionFactory factory, int minSize,
+                              int maxSize, long timeoutMillis, SqliteSettings sqliteSettings, ExecuteListener listener)
+      throws SQLException {
+    if (dialect == null) {
+      dialect = JDBCUtils.dialect(url);
+    }
+    if (!SUPPORTED_DIALECTS.contains(dialect.family())) {
+      LOGGER.warn("The {} dialect isn't supported, some statements may not work", dialect);
+    }
+    if (dialect.family() == SQLDialect.SQLITE) {
+      List<String> pragmas = sqliteSettings.getConnectionPragmas();
+      ConnectionPool.ConnectionFactory sqliteFactory = () -> {
+        Connection conn = factory.create();
+        try (Statement statement = conn.createStatement()) {
+          for (String pragma : pragmas) {
+            statement.execute(pragma);
+          }
+        } catch (SQLException e) {
+          conn.close();
+          throw e;
+        }
+        return conn;
+      };
+      // every connection to an in-memory database gets a database of its own
+      if (url.contains(":memory:") || url.contains("mode=memory")) {
+        ConnectionPool pool = new ConnectionPool("default", sqliteFactory, 1, 1, timeoutMillis);
+        return new Database(dialect, pool, pool, 0, listener);
+      }
+      ConnectionPool writePool = new ConnectionPool("write", sqliteFactory, 1, 1, timeoutMillis);
+      try {
+        // without write-ahead logging, readers and the writer lock each other out. the setting is kept in the database
+        // file, so it only has to be set from one connection
+        DSL.using(writePool, dialect).fetch("pragma journal_mode = WAL");
+        ConnectionPool readPool = new ConnectionPool("read", sqliteFactory, minSize, maxSize, timeoutMillis);
+        return new Database(dialect, writePool, readPool, sqliteSettings.writeBatchSize, listener);
+      } catch (SQLException | RuntimeException e) {
+        writePool.close();
+        throw e;
+      }
+    }
+    ConnectionPool pool = new ConnectionPool("default", factory, minSize, maxSize, timeoutMillis);
+    return new Database(dialect, pool, pool, 0, listener);
+  }
+
+  private static DSLContext using(ConnectionPool pool, SQLDialect dialect, ExecuteListener listener) {
+    Configuration configuration = new DefaultConfiguration().set(pool).set(dialect);
+    if (listener != null) {
+      configuration.set(new DefaultExecuteListenerProvider(listener));
+    }
+    return DSL.using(configuration);
+  }
+
+  public SQLDialect getDialect() {
+    return dialect;
+  }
+
+  public DSLContext getWriteContext() {
+    return writeContext;
+  }
+
+  public DSLContext getReadContext() {
+    return readContext;
+  }
+
+  /**
+   * Runs a write and returns once it has been committed. Every statement that modifies anything should go through this.
+   */
+  public <T> T write(Function<DSLContext, T> write) {
+    if (writeQueue != null) {
+      return writeQueue.submit(write);
+    }
+    return write.apply(writeContext);
+  }
+
+  public Stats getStats() {
+    Stats stats = new Stats();
+    stats.pools = new ArrayList<>();
+    stats.pools.add(writePool.getStats());
+    if (readPool != writePool) {
+      stats.pools.add(readPool.getStats());
+    }
+    if (writeQueue != null) {
+      stats.writes = writeQueue.getWriteCount();
+      stats.writeBatches = writeQueue.getBatchCount();
+    }
+    return stats;
+  }
+
+  @Override
+  public void close() {
+    if (writeQueue != null) {
+      writeQueue.close();
+    }
+    writePool.close();
+    readPool.close();
+  }
+
+  public static class Stats {
+    public List<ConnectionPool.Stats> pools;
+    // only counted for writes that go through the write queue
+    public long writes;
+    public long writeBatches;
+    // filled in by whoever owns the repositories
+    public List<EntityCache.Stats> caches;
+  }
+
+  public static class SqliteSettings {
+    private static final List<String> SYNCHRONOUS_LEVELS = Arrays.asList("OFF", "NORMAL", "FULL", "EXTRA");
+
+    // NORMAL is still safe from corruption in WAL mode, a power loss can only lose the most recent commits
+    public String synchronous = "NORMAL";
+    // in KB
+    public int cacheSize = 16384;
+    // in bytes
+    public long mmapSize = 268435456;
+    // how long a connection waits on a lock before giving up, in milliseconds
+    public int busyTimeout = 5000;
+    // at most this many writes are committed together, or 0 to write everything directly on the calling thread
+    public int writeBatchSize = 64;
+
+    public static boolean isValidSynchronousLevel(String level) {
+      return level != null && SYNCHRONOUS_LEVELS.contains(level.toUpperCase());
+    }
+
+    // these only apply to the connection they're run on
+    private List<String> getConnectionPragmas() {
+      if (!isValidSynchronousLevel(synchronous)) {
+        throw new IllegalArgumentException("Invalid synchronous level: " + synchronous);
+      }
+      return Arrays.asList(
+          "pragma synchronous = " + synchronous.toUpperCase(),
+          "pragma cache_size = " + -cacheSize,
+          "pragma mmap_size = " + mmapSize,
+          "pragma busy_timeout = " + busyTimeout
+      );
+    }
+  }
+
+}
@@ -0,0 +1,16 @@
+package me.whizvox.wsite.database;
+
+import org.jooq.exception.DataAccessException;
+
+/**
+ * Thrown by a repository when a write was turned away for giving a row the same unique key as another one.
+ */
+public class DuplicateKeyException extends DataAccessException {
+
+  private static final long serialVersionUID = 1L;
+
+  public DuplicateKeyException(String message, Throwable cause) {
+    super(message, cause);
+  }
+
+}
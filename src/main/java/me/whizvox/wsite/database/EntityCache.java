@@ -0,0 +1,156 @@
+package me.whizvox.wsite.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A bounded cache of rows that can be looked up either by their primary key or by any of their unique keys. Once it's
+ * full, the least recently used row is evicted. Every write to a cached row has to invalidate it once it has been
+ * committed, otherwise it keeps being read as it was before the write.
+ * @param <K> Type of the primary key
+ * @param <R> Type of the rows, which must not be changed once they're cached
+ */
+public class EntityCache<K, R> {
+
+  private final String name;
+  private final int capacity;
+  private final Function<R, K> primaryKey;
+  private final List<Function<R, String>> uniqueKeys;
+  private final LinkedHashMap<K, R> entries;
+  // one for each unique key, to the primary key of the row that has it
+  private final List<Map<String, K>> indexes;
+  private long generation;
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long invalidations;
+
+  public EntityCache(String name, int capacity, Function<R, K> primaryKey, List<Function<R, String>> uniqueKeys) {
+    this.name = name;
+    this.capacity = capacity;
+    this.primaryKey = primaryKey;
+    this.uniqueKeys = uniqueKeys;
+    // access-ordered, so the eldest entry is always the least recently used one
+    entries = new LinkedHashMap<>(16, 0.75f, true);
+    indexes = new ArrayList<>(uniqueKeys.size());
+    uniqueKeys.forEach(key -> indexes.add(new HashMap<>()));
+    generation = 0;
+  }
+
+  /**
+   * Returns the cached row with the primary key, or loads it if there isn't one. The loader may return null if there is
+   * no such row, which isn't cached.
+   */
+  public R get(K key, Supplier<R> loader) {
+    long generation;
+    synchronized (this) {
+      R row = entries.get(key);
+      if (row != null) {
+        hits++;
+        return row;
+      }
+      misses++;
+      generation = this.generation;
+    }
+    return load(loader, generation);
+  }
+
+  /**
+   * Same as {@link #get(Object, Supplier)}, but by one of the unique keys instead.
+   * @param index Which unique key to look up by, in the order they were passed to the constructor
+   */
+  public R getUnique(int index, String key, Supplier<R> loader) {
+    long generation;
+    synchronized (this) {
+      K primary = indexes.get(index).get(key);
+      if (primary != null) {
+        hits++;
+        return entries.get(primary);
+      }
+      misses++;
+      generation = this.generation;
+    }
+    return load(loader, generation);
+  }
+
+  private R load(Supplier<R> loader, long generation) {
+    R row = loader.get();
+    if (row != null) {
+      put(row, generation);
+    }
+    return row;
+  }
+
+  private synchronized void put(R row, long generation) {
+    // it may have been read before a write that was invalidated while it was being loaded
+    if (generation != this.generation) {
+      return;
+    }
+    K key = primaryKey.apply(row);
+    remove(key);
+    entries.put(key, row);
+    for (int i = 0; i < uniqueKeys.size(); i++) {
+      String uniqueKey = uniqueKeys.get(i).apply(row);
+      if (uniqueKey != null) {
+        indexes.get(i).put(uniqueKey, key);
+      }
+    }
+    while (entries.size() > capacity) {
+      remove(entries.keySet().iterator().next());
+      evictions++;
+    }
+  }
+
+  private void remove(K key) {
+    R row = entries.remove(key);
+    if (row != null) {
+      for (int i = 0; i < uniqueKeys.size(); i++) {
+        String uniqueKey = uniqueKeys.get(i).apply(row);
+        if (uniqueKey != null) {
+          indexes.get(i).remove(uniqueKey, key);
+        }
+      }
+    }
+  }
+
+  public synchronized void invalidate(K key) {
+    generation++;
+    invalidations++;
+    remove(key);
+  }
+
+  public synchronized void clear() {
+    generation++;
+    invalidations++;
+    entries.clear();
+    indexes.forEach(Map::clear);
+  }
+
+  public synchronized Stats getStats() {
+    Stats stats = new Stats();
+    stats.name = name;
+    stats.capacity = capacity;
+    stats.size = entries.size();
+    stats.hits = hits;
+    stats.misses = misses;
+    stats.evictions = evictions;
+    stats.invalidations = invalidations;
+    return stats;
+  }
+
+  public static class Stats {
+    public String name;
+    public int capacity;
+    public int size;
+    public long hits;
+    public long misses;
+    public long evictions;
+    public long invalidations;
+  }
+
+}
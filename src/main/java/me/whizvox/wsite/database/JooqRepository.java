@@ -1,27 +1,205 @@
 package me.whizvox.wsite.database;
 
-import org.jooq.DSLContext;
-import org.jooq.Table;
+import org.jooq.*;
+import org.jooq.exception.DataAccessException;
+import org.jooq.impl.DSL;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 public class JooqRepository<TABLE extends Table> {
 
-  protected DSLContext jooq;
+  protected Database database;
+  // statements that only read go through reader, ones that write through write()
+  protected DSLContext reader;
   protected TABLE table;
+  // kept up to date by every insert and delete, rather than counted every time by going through every row
+  private final AtomicInteger count;
 
-  public JooqRepository(DSLContext jooq, TABLE table) {
-    this.jooq = jooq;
+  public JooqRepository(Database database, TABLE table) {
+    this.database = database;
+    reader = database.getReadContext();
     this.table = table;
+    count = new AtomicInteger(0);
+  }
+
+  /**
+   * @throws DuplicateKeyException If the write would have given a row the same unique key as another one
+   */
+  protected <T> T write(Function<DSLContext, T> write) {
+    try {
+      return database.write(write);
+    } catch (DataAccessException e) {
+      if (isUniqueViolation(e)) {
+        throw new DuplicateKeyException(e.getMessage(), e);
+      }
+      throw e;
+    }
+  }
+
+  // jOOQ's own SQL state subclass can't be relied on, H2's comes back without one and SQLite doesn't set a state at all
+  private static boolean isUniqueViolation(DataAccessException e) {
+    SQLException cause = e.getCause(SQLException.class);
+    if (cause == null) {
+      return false;
+    }
+    if ("23505".equals(cause.getSQLState())) {
+      return true;
+    }
+    // SQLITE_CONSTRAINT, which covers every kind of constraint
+    return cause.getErrorCode() == 19 && cause.getMessage() != null &&
+        cause.getMessage().contains("UNIQUE constraint failed");
   }
 
   public boolean create() {
-    return jooq.createTableIfNotExists(table)
-        .columns(table.fields())
-        .execute() > 0;
+    boolean created = write(jooq -> {
+      CreateTableConstraintStep create = jooq.createTableIfNotExists(table)
+          .columns(table.fields());
+      // only the primary key, the generated classes' other keys are indexes SQLite made and named by itself. the unique
+      // keys lookups need are built by Migrations instead
+      UniqueKey<?> primaryKey = table.getPrimaryKey();
+      if (primaryKey != null) {
+        create = create.constraints(DSL.constraint(primaryKey.getName()).primaryKey(primaryKey.getFieldsArray()));
+      }
+      return create.execute() > 0;
+    });
+    addMissingColumns();
+    count.set(reader.fetchCount(table));
+    return created;
+  }
+
+  // case-insensitive lookups compare this rather than the column, so that's what needs to be indexed for them (see
+  // Migrations)
+  protected static Field<String> ignoreCase(Field<String> field) {
+    return DSL.lower(field);
+  }
+
+  protected static Condition equalIgnoreCase(Field<String> field, String value) {
+    return ignoreCase(field).equal(DSL.lower(value));
+  }
+
+  /**
+   * Folds a value the same way a case-insensitive lookup does on SQLite, which only folds ASCII characters. Two values
+   * that are equal after this are always equal to the database too, but other databases may fold more than this does,
+   * so not the other way around (see {@link #foldCaseLoosely(String)}).
+   */
+  public static String foldCase(String value) {
+    if (value == null) {
+      return null;
+    }
+    char[] chars = value.toCharArray();
+    for (int i = 0; i < chars.length; i++) {
+      if (chars[i] >= 'A' && chars[i] <= 'Z') {
+        chars[i] += 'a' - 'A';
+      }
+    }
+    return new String(chars);
+  }
+
+  /**
+   * Folds a value at least as far as any database's case-insensitive lookup does, so that two values the database
+   * considers equal are always equal after this too. Values that are equal after this may still differ to the database.
+   */
+  public static String foldCaseLoosely(String value) {
+    if (value == null) {
+      return null;
+    }
+    StringBuilder folded = new StringBuilder(value.length());
+    value.codePoints().forEach(c -> {
+      // U+0130 is the only character some databases lower into two, an i followed by a combining dot above
+      if (c == '\u0307' && folded.length() > 0 && folded.charAt(folded.length() - 1) == 'i') {
+        return;
+      }
+      // through upper case first, so that characters with more than one lower case form end up as the same one
+      folded.appendCodePoint(Character.toLowerCase(Character.toUpperCase(c)));
+    });
+    return folded.toString();
+  }
+
+  /**
+   * Fetches a page of rows in the keyset's order, either right after or right before a cursor. Without one, the page is
+   * found by skipping over every page before it instead.
+   * @throws IllegalArgumentException If the cursor is malformed
+   */
+  protected static <R extends Record> List<R> fetchPage(SelectWhereStep<R> select, Keyset keyset, int limit, int page,
+                                                        String after, String before, boolean descending) {
+    if (after != null) {
+      return select.where(keyset.after(keyset.decode(after), descending))
+          .orderBy(keyset.orderBy(descending))
+          .limit(limit)
+          .fetch();
+    }
+    if (before != null) {
+      // paging backwards is paging forwards in the opposite order, then flipping the page around
+      List<R> records = new ArrayList<>(select.where(keyset.after(keyset.decode(before), !descending))
+          .orderBy(keyset.orderBy(!descending))
+          .limit(limit)
+          .fetch());
+      Collections.reverse(records);
+      return records;
+    }
+    return select.orderBy(keyset.orderBy(descending))
+        .limit(limit)
+        .offset(limit * page)
+        .fetch();
+  }
+
+  // tables created by an older version won't have columns that have been added since
+  protected void addMissingColumns() {
+    // the columns a query actually returns, rather than going through the database's metadata, which differs between
+    // databases and lists the tables of every schema. the table is only referred to by name, otherwise jOOQ would
+    // fill in the generated columns instead
+    Set<String> existing = new HashSet<>();
+    for (Field<?> field : reader.select(DSL.asterisk()).from(DSL.table(table.getQualifiedName()))
+        .where(DSL.falseCondition())
+        .fetch().fields()) {
+      existing.add(field.getName().toLowerCase());
+    }
+    for (Field<?> field : table.fields()) {
+      if (!existing.contains(field.getName().toLowerCase())) {
+        write(jooq -> jooq.alterTable(table)
+            .addColumn(field)
+            .execute());
+      }
+    }
   }
 
   public boolean drop() {
-    return jooq.dropTableIfExists(table)
-        .execute() > 0;
+    boolean dropped = write(jooq -> jooq.dropTableIfExists(table)
+        .execute() > 0);
+    count.set(0);
+    return dropped;
+  }
+
+  /**
+   * @return The number of rows as of the last committed insert or delete, without going to the database
+   */
+  public int getCount() {
+    return count.get();
+  }
+
+  /**
+   * Counts every row, for when the count can't be even a little out of date.
+   */
+  public int fetchCount() {
+    return reader.fetchCount(table);
+  }
+
+  // every insert and delete has to pass the number of rows it changed through one of these once it has been committed
+  protected int inserted(int rows) {
+    count.addAndGet(rows);
+    return rows;
+  }
+
+  protected int deleted(int rows) {
+    count.addAndGet(-rows);
+    return rows;
   }
 
 }
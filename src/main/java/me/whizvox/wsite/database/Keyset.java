@@ -0,0 +1,152 @@
+package me.whizvox.wsite.database;
+
+import me.whizvox.wsite.util.JsonUtils;
+import org.jooq.Condition;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.SortField;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An ordering of rows that can be paged through by resuming after the last row of the previous page, rather than by
+ * skipping over every row before it, so that every page costs the same no matter how far in it is. The last field has
+ * to be unique, and only the first one may be null. A position in the ordering is passed around as an opaque cursor.
+ */
+public class Keyset {
+
+  private final Field<?>[] fields;
+  private final Field<?>[] cursorFields;
+  private final boolean firstNullable;
+  // so that a cursor from a different ordering isn't mistaken for one of this one
+  private final String id;
+
+  public Keyset(boolean firstNullable, Field<?>... fields) {
+    this.fields = fields;
+    this.firstNullable = firstNullable;
+    cursorFields = new Field<?>[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      // timestamps are only read back to the millisecond, so a cursor made from one wouldn't match the row it came from
+      Field<?> field = fields[i].getType() == Timestamp.class ? fields[i].cast(SQLDataType.VARCHAR) : fields[i];
+      cursorFields[i] = field.as("cursor_" + i);
+    }
+    id = Stream.of(fields).map(Field::getName).collect(Collectors.joining(","));
+  }
+
+  /**
+   * @return The fields that a row's cursor is made from, which have to be selected alongside the row itself
+   */
+  public Field<?>[] getCursorFields() {
+    return cursorFields;
+  }
+
+  // nulls come first in ascending order and last in descending order, no matter what the database does by default
+  public List<SortField<?>> orderBy(boolean descending) {
+    List<SortField<?>> order = new ArrayList<>(fields.length);
+    for (int i = 0; i < fields.length; i++) {
+      SortField<?> sortField = descending ? fields[i].desc() : fields[i].asc();
+      if (i == 0 && firstNullable) {
+        sortField = descending ? sortField.nullsLast() : sortField.nullsFirst();
+      }
+      order.add(sortField);
+    }
+    return order;
+  }
+
+  /**
+   * @return A condition that matches every row that comes after the position in the given direction
+   */
+  public Condition after(Object[] values, boolean descending) {
+    List<Condition> conditions = new ArrayList<>(fields.length);
+    Condition equal = DSL.noCondition();
+    for (int i = 0; i < fields.length; i++) {
+      conditions.add(equal.and(after(i, values[i], descending)));
+      equal = equal.and(equal(i, values[i]));
+    }
+    Condition condition = DSL.or(conditions);
+    // lets the database seek to the first row with an index rather than going through every one before it
+    if (fields.length > 1 && values[0] != null && !firstNullable) {
+      @SuppressWarnings("unchecked") Field<Object> field = (Field<Object>) fields[0];
+      condition = (descending ? field.le(values[0]) : field.ge(values[0])).and(condition);
+    }
+    return condition;
+  }
+
+  private Condition equal(int index, Object value) {
+    @SuppressWarnings("unchecked") Field<Object> field = (Field<Object>) fields[index];
+    return value == null ? field.isNull() : field.equal(value);
+  }
+
+  private Condition after(int index, Object value, boolean descending) {
+    @SuppressWarnings("unchecked") Field<Object> field = (Field<Object>) fields[index];
+    boolean nullable = index == 0 && firstNullable;
+    if (descending) {
+      if (value == null) {
+        return DSL.falseCondition();
+      }
+      return nullable ? field.lessThan(value).or(field.isNull()) : field.lessThan(value);
+    }
+    return value == null ? field.isNotNull() : field.greaterThan(value);
+  }
+
+  public String encode(Record record) {
+    String[] values = new String[fields.length + 1];
+    values[0] = id;
+    for (int i = 0; i < fields.length; i++) {
+      values[i + 1] = Objects.toString(record.get(cursorFields[i]), null);
+    }
+    byte[] json = JsonUtils.toJson(values).getBytes(StandardCharsets.UTF_8);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+  }
+
+  /**
+   * @throws IllegalArgumentException If the cursor is malformed or from a different ordering
+   */
+  public Object[] decode(String cursor) throws IllegalArgumentException {
+    String[] values;
+    try {
+      values = JsonUtils.fromJson(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8),
+          String[].class);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Malformed cursor", e);
+    }
+    if (values == null || values.length != fields.length + 1 || !id.equals(values[0])) {
+      throw new IllegalArgumentException("Cursor is not for this ordering");
+    }
+    Object[] decoded = new Object[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      if (values[i + 1] == null) {
+        if (i > 0 || !firstNullable) {
+          throw new IllegalArgumentException("Cursor is missing a value");
+        }
+      } else {
+        try {
+          decoded[i] = fields[i].getDataType().convert(values[i + 1]);
+        } catch (RuntimeException e) {
+          throw new IllegalArgumentException("Malformed cursor value", e);
+        }
+      }
+    }
+    return decoded;
+  }
+
+  public static class Row<T> {
+    public final T value;
+    public final String cursor;
+    public Row(T value, String cursor) {
+      this.value = value;
+      this.cursor = cursor;
+    }
+  }
+
+}
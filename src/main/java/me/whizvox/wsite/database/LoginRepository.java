@@ -3,53 +3,60 @@ package me.whizvox.wsite.database;
 import me.whizvox.wsite.generated.tables.Logins;
 import me.whizvox.wsite.generated.tables.records.LoginsRecord;
 import me.whizvox.wsite.util.Utils;
-import org.jooq.DSLContext;
 import org.jooq.Result;
 
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
 public class LoginRepository extends JooqRepository<Logins> {
 
-  public LoginRepository(DSLContext jooq) {
-    super(jooq, Logins.LOGINS);
+  public LoginRepository(Database database) {
+    super(database, Logins.LOGINS);
   }
 
   public boolean insert(Login login) {
-    return jooq.insertInto(table)
+    return inserted(write(jooq -> jooq.insertInto(table)
         .set(PARSER.fromPojo(login))
-        .execute() > 0;
+        .execute())) > 0;
   }
 
   public boolean delete(String token) {
-    return jooq.deleteFrom(table)
+    return deleted(write(jooq -> jooq.deleteFrom(table)
         .where(table.TOKEN.equal(token))
-        .execute() > 0;
+        .execute())) > 0;
   }
 
   public boolean deleteFromUserId(UUID userId) {
-    return jooq.deleteFrom(table)
+    return deleted(write(jooq -> jooq.deleteFrom(table)
         .where(table.USER_ID.equal(userId.toString()))
-        .execute() > 0;
+        .execute())) > 0;
   }
 
   public int deleteAllExpired() {
-    return jooq.deleteFrom(table)
+    return deleted(write(jooq -> jooq.deleteFrom(table)
         .where(table.EXPIRATION_DATE.lessOrEqual(Timestamp.from(Instant.now())))
-        .execute();
+        .execute()));
   }
 
   public Login selectFromToken(String token) {
-    LoginsRecord record = jooq.selectFrom(table)
+    LoginsRecord record = reader.selectFrom(table)
         .where(table.TOKEN.equal(token))
         .fetchAny();
     return PARSER.fromRecord(record);
   }
 
+  public List<Login> selectFromTokens(Collection<String> tokens) {
+    Result<LoginsRecord> records = reader.selectFrom(table)
+        .where(table.TOKEN.in(tokens))
+        .fetch();
+    return PARSER.fromRecords(records);
+  }
+
   public Login selectFromClientInfo(UUID userId, String userAgent, String ipAddress) {
-    LoginsRecord record = jooq.selectFrom(table)
+    LoginsRecord record = reader.selectFrom(table)
         .where(table.USER_ID.equal(userId.toString())
             .and(table.USER_AGENT.equal(userAgent))
             .and(table.IP_ADDRESS.equal(ipAddress)))
@@ -58,21 +65,21 @@ public class LoginRepository extends JooqRepository<Logins> {
   }
 
   public List<Login> selectFromUserId(UUID userId) {
-    Result<LoginsRecord> records = jooq.selectFrom(table)
+    Result<LoginsRecord> records = reader.selectFrom(table)
         .where(table.USER_ID.equal(userId.toString()))
         .fetch();
     return PARSER.fromRecords(records);
   }
 
   public List<Login> selectFromUserAgent(String userAgent) {
-    Result<LoginsRecord> records = jooq.selectFrom(table)
+    Result<LoginsRecord> records = reader.selectFrom(table)
         .where(table.USER_AGENT.equal(userAgent))
         .fetch();
     return PARSER.fromRecords(records);
   }
 
   public List<Login> selectFromIpAddress(String ipAddress) {
-    Result<LoginsRecord> records = jooq.selectFrom(table)
+    Result<LoginsRecord> records = reader.selectFrom(table)
         .where(table.IP_ADDRESS.equal(ipAddress))
         .fetch();
     return PARSER.fromRecords(records);
@@ -0,0 +1,28 @@
+package me.whizvox.wsite.database;
+
+/**
+ * A single change to the schema. Once a migration has been released, it must never be changed, only followed by newer
+ * ones.
+ */
+public class Migration {
+
+  @FunctionalInterface
+  public interface Step {
+    void apply(Migrator migrator);
+  }
+
+  public final int version;
+  public final String description;
+  private final Step step;
+
+  public Migration(int version, String description, Step step) {
+    this.version = version;
+    this.description = description;
+    this.step = step;
+  }
+
+  public void apply(Migrator migrator) {
+    step.apply(migrator);
+  }
+
+}
@@ -0,0 +1,71 @@
+package me.whizvox.wsite.database;
+
+import org.jooq.Field;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static me.whizvox.wsite.database.JooqRepository.ignoreCase;
+import static me.whizvox.wsite.generated.tables.Logins.LOGINS;
+import static me.whizvox.wsite.generated.tables.Pages.PAGES;
+import static me.whizvox.wsite.generated.tables.Users.USERS;
+
+/**
+ * Every change made to the schema since the tables were first created from the generated classes, oldest first.
+ */
+public class Migrations {
+
+  public static final List<Migration> ALL = Collections.unmodifiableList(Arrays.asList(
+      new Migration(1, "Index case-insensitive page and user lookups", migrator -> {
+        migrator.createIndex("pages_path_lower", PAGES, ignoreCase(PAGES.PATH));
+        migrator.createIndex("users_username_lower", USERS, ignoreCase(USERS.USERNAME));
+        migrator.createIndex("users_email_address_lower", USERS, ignoreCase(USERS.EMAIL_ADDRESS));
+      }),
+      // the tables were created without any of the keys the generated classes describe
+      new Migration(2, "Index page, user and login lookups", migrator -> {
+        migrator.createIndex("pages_path", PAGES, PAGES.PATH);
+        migrator.createIndex("users_id", USERS, USERS.ID);
+        migrator.createIndex("logins_token", LOGINS, LOGINS.TOKEN);
+        migrator.createIndex("logins_user_id", LOGINS, LOGINS.USER_ID);
+        migrator.createIndex("logins_expiration_date", LOGINS, LOGINS.EXPIRATION_DATE);
+      }),
+      // users created before the operator column was added have it set to null, which can't be read into a User
+      new Migration(3, "Fill in missing user operator flags", migrator ->
+          migrator.backfill(USERS, USERS.ID, USERS.OPERATOR.isNull(), Collections.singletonMap(USERS.OPERATOR, false))
+      ),
+      // lets listing pages and users seek straight to where a page starts in each of their orderings
+      new Migration(4, "Index page and user list orderings", migrator -> {
+        migrator.createIndex("pages_title_path", PAGES, PAGES.TITLE, PAGES.PATH);
+        migrator.createIndex("pages_syntax_path", PAGES, PAGES.SYNTAX, PAGES.PATH);
+        migrator.createIndex("pages_published_path", PAGES, PAGES.PUBLISHED, PAGES.PATH);
+        migrator.createIndex("pages_last_edited_path", PAGES, PAGES.LAST_EDITED, PAGES.PATH);
+        migrator.createIndex("users_username", USERS, USERS.USERNAME);
+        migrator.createIndex("users_email_address", USERS, USERS.EMAIL_ADDRESS);
+        migrator.createIndex("users_operator_username", USERS, USERS.OPERATOR, USERS.USERNAME);
+        migrator.createIndex("users_when_created_username", USERS, USERS.WHEN_CREATED, USERS.USERNAME);
+      }),
+      // checking for a conflict before writing can't stop two writes that both checked first from getting through.
+      // these replace the plain indexes from migration 1
+      new Migration(5, "Enforce unique usernames, email addresses and page paths", migrator -> {
+        migrator.createUniqueIndex("pages_path_lower_unique", PAGES, uniqueIgnoringCase(migrator, PAGES.PATH));
+        migrator.createUniqueIndex("users_username_lower_unique", USERS, uniqueIgnoringCase(migrator, USERS.USERNAME));
+        migrator.createUniqueIndex("users_email_address_lower_unique", USERS,
+            uniqueIgnoringCase(migrator, USERS.EMAIL_ADDRESS));
+        migrator.dropIndex("pages_path_lower");
+        migrator.dropIndex("users_username_lower");
+        migrator.dropIndex("users_email_address_lower");
+      }),
+      // passwords were created as char(40), but even the default hash is twice as long. only SQLite let them in anyway
+      new Migration(6, "Fit password hashes of every allowed size", migrator ->
+          migrator.alterColumnType(USERS, USERS.PASSWORD)
+      )
+  ));
+
+  // H2 can't index lower(), so it only turns away values that are exactly the same. ones that only differ in case are
+  // still caught by checking with a case-insensitive lookup before writing, just not when two writes race
+  private static Field<String> uniqueIgnoringCase(Migrator migrator, Field<String> field) {
+    return migrator.canIndexExpressions() ? ignoreCase(field) : field;
+  }
+
+}
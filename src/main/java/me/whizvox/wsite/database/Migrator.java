@@ -0,0 +1,224 @@
+package me.whizvox.wsite.database;
+
+import org.jooq.*;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+import org.slf4j.Logger;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Brings the schema up to date by applying every {@link Migration} newer than the version recorded in the database.
+ * A migration isn't applied in a single transaction, so that building an index or filling in a column of a large table
+ * doesn't hold up every other write until it's done. That means every step has to be safe to run again, in case the
+ * migration was interrupted partway through.
+ * <p>
+ * PostgreSQL builds and drops indexes concurrently, without locking out writes to the table. SQLite can't build an
+ * index online: it's built in a single write, so every other write waits for it (reads don't), which on a large table
+ * can take a while.
+ */
+public class Migrator {
+
+  private static final Table<Record> SCHEMA_VERSION = DSL.table(DSL.name("schema_version"));
+  private static final Field<Integer> VERSION = DSL.field(DSL.name("version"), SQLDataType.INTEGER.nullable(false));
+  private static final Field<String> DESCRIPTION =
+      DSL.field(DSL.name("description"), SQLDataType.VARCHAR(255).nullable(false));
+  private static final Field<Timestamp> APPLIED = DSL.field(DSL.name("applied"), SQLDataType.TIMESTAMP.nullable(false));
+
+  // how often progress is logged while filling in a column, in milliseconds
+  private static final long PROGRESS_INTERVAL = 5000;
+
+  private final Database database;
+  private final Logger logger;
+  private final int batchSize;
+
+  public Migrator(Database database, Logger logger, int batchSize) {
+    this.database = database;
+    this.logger = logger;
+    this.batchSize = batchSize;
+  }
+
+  public int getVersion() {
+    Integer version = database.getReadContext().select(DSL.max(VERSION))
+        .from(SCHEMA_VERSION)
+        .fetchOne(0, Integer.class);
+    return version == null ? 0 : version;
+  }
+
+  /**
+   * @return The number of migrations that were applied
+   */
+  public int migrate(List<Migration> migrations) {
+    database.write(db -> db.createTableIfNotExists(SCHEMA_VERSION)
+        .columns(VERSION, DESCRIPTION, APPLIED)
+        .constraints(DSL.constraint("pk_schema_version").primaryKey(VERSION))
+        .execute());
+    int version = getVersion();
+    List<Migration> pending = migrations.stream()
+        .filter(migration -> migration.version > version)
+        .sorted(Comparator.comparingInt(migration -> migration.version))
+        .collect(Collectors.toList());
+    if (pending.isEmpty()) {
+      int latest = migrations.stream().mapToInt(migration -> migration.version).max().orElse(0);
+      if (version > latest) {
+        logger.warn("Database schema version {} is newer than this version of wsite knows about ({})", version, latest);
+      } else {
+        logger.info("Database schema is up to date (version {})", version);
+      }
+      return 0;
+    }
+    logger.info("Migrating database schema from version {} to {}...", version,
+        pending.get(pending.size() - 1).version);
+    for (Migration migration : pending) {
+      logger.info("Applying migration {}: {}", migration.version, migration.description);
+      long start = System.currentTimeMillis();
+      migration.apply(this);
+      database.write(db -> db.insertInto(SCHEMA_VERSION)
+          .set(VERSION, migration.version)
+          .set(DESCRIPTION, migration.description)
+          .set(APPLIED, Timestamp.from(Instant.now()))
+          .execute());
+      logger.info("Applied migration {} in {} ms", migration.version, System.currentTimeMillis() - start);
+    }
+    return pending.size();
+  }
+
+  public void createIndex(String name, Table<?> table, OrderField<?>... fields) {
+    buildIndex(name, table, false, fields);
+  }
+
+  /**
+   * Builds an index that rejects any write giving two rows the same values. It can't be built while there already are
+   * some, so those have to be sorted out by hand first.
+   * @throws IllegalStateException If there are rows with the same values
+   */
+  public void createUniqueIndex(String name, Table<?> table, Field<?>... fields) {
+    Result<Record> duplicates = database.getReadContext().select(fields)
+        .from(table)
+        .groupBy(fields)
+        .having(DSL.count().greaterThan(1))
+        .limit(10)
+        .fetch();
+    if (duplicates.isNotEmpty()) {
+      throw new IllegalStateException("Cannot build unique index " + name + " on " + table.getName() + ", these " +
+          "values are shared by more than one row: " + duplicates.intoMaps());
+    }
+    buildIndex(name, table, true, fields);
+  }
+
+  /**
+   * Whether an index can be built on an expression, like lower(), rather than just on columns.
+   */
+  public boolean canIndexExpressions() {
+    return database.getDialect().family() != SQLDialect.H2;
+  }
+
+  private void buildIndex(String name, Table<?> table, boolean unique, OrderField<?>... fields) {
+    // H2 can only index columns, not expressions like lower(). lookups still work without them, just slower
+    if (!canIndexExpressions() && !Arrays.stream(fields).allMatch(field -> field instanceof TableField)) {
+      logger.warn("Skipping index {} on {}, {} can't index expressions", name, table.getName(), database.getDialect());
+      return;
+    }
+    logger.info("Building index {} on {}...", name, table.getName());
+    long start = System.currentTimeMillis();
+    if (database.getDialect().family() == SQLDialect.POSTGRES) {
+      createIndexConcurrently(name, createIndexStep(database.getWriteContext(), name, unique).on(table, fields));
+    } else {
+      database.write(db -> createIndexStep(db, name, unique)
+          .on(table, fields)
+          .execute());
+    }
+    logger.info("Built index {} in {} ms", name, System.currentTimeMillis() - start);
+  }
+
+  private static CreateIndexStep createIndexStep(DSLContext db, String name, boolean unique) {
+    return unique ? db.createUniqueIndexIfNotExists(name) : db.createIndexIfNotExists(name);
+  }
+
+  public void dropIndex(String name) {
+    if (database.getDialect().family() == SQLDialect.POSTGRES) {
+      database.getWriteContext().execute("drop index concurrently if exists {0}", DSL.name(name));
+    } else {
+      database.write(db -> db.dropIndexIfExists(name)
+          .execute());
+    }
+    logger.info("Dropped index {}", name);
+  }
+
+  // can't be run in a transaction, so it isn't. the connection is in auto-commit mode unless it's in one
+  private void createIndexConcurrently(String name, Query createIndex) {
+    DSLContext db = database.getWriteContext();
+    // a concurrent build that failed partway through leaves an invalid index behind, which "if not exists" would skip
+    Object valid = db.fetchValue("select i.indisvalid from pg_index i join pg_class c on c.oid = i.indexrelid " +
+        "where c.relname = ? and pg_table_is_visible(c.oid)", name);
+    if (Boolean.FALSE.equals(valid)) {
+      logger.warn("Dropping invalid index {} left over from an earlier build", name);
+      db.execute("drop index concurrently if exists {0}", DSL.name(name));
+    }
+    // jOOQ can't build a concurrent index, so it's added to the statement it renders
+    String sql = db.renderInlined(createIndex);
+    String concurrently = sql.replaceFirst("^create (unique )?index ", "create $1index concurrently ");
+    if (concurrently.equals(sql)) {
+      throw new IllegalStateException("Unexpected index statement: " + sql);
+    }
+    db.execute(concurrently);
+  }
+
+  /**
+   * Changes a column to the type it's declared with. SQLite can't change a column's type, but it doesn't enforce a
+   * column's length either, so it's left as it is there. PostgreSQL may rewrite the table to change it, which locks
+   * out reads and writes to that table until it's done.
+   */
+  public void alterColumnType(Table<?> table, Field<?> field) {
+    if (database.getDialect().family() == SQLDialect.SQLITE) {
+      logger.info("Skipping changing the type of {}.{}, SQLite doesn't enforce it", table.getName(), field.getName());
+      return;
+    }
+    // only the type, a column that can't be null stays that way. jOOQ renders setting both on PostgreSQL incorrectly
+    database.write(db -> db.alterTable(table)
+        .alter(field)
+        .set(field.getDataType().nullability(Nullability.DEFAULT))
+        .execute());
+    logger.info("Changed the type of {}.{} to {}", table.getName(), field.getName(),
+        field.getDataType().getCastTypeName());
+  }
+
+  /**
+   * Sets the given values on every row that matches the condition, one batch per transaction. The values have to make
+   * a row stop matching the condition.
+   * @param key A column that identifies each row
+   * @return The number of rows that were changed
+   */
+  public <T> int backfill(Table<?> table, Field<T> key, Condition condition, Map<? extends Field<?>, ?> values) {
+    int total = database.getReadContext().fetchCount(table, condition);
+    if (total == 0) {
+      return 0;
+    }
+    logger.info("Filling in {} rows of {}...", total, table.getName());
+    long start = System.currentTimeMillis();
+    long lastProgress = start;
+    int done = 0;
+    int changed;
+    do {
+      changed = database.write(db -> db.update(table)
+          .set(values)
+          .where(key.in(DSL.select(key).from(table).where(condition).limit(batchSize)))
+          .execute());
+      done += changed;
+      long now = System.currentTimeMillis();
+      if (now - lastProgress >= PROGRESS_INTERVAL) {
+        logger.info("Filled in {} of {} rows of {}", done, total, table.getName());
+        lastProgress = now;
+      }
+    } while (changed == batchSize);
+    logger.info("Filled in {} rows of {} in {} ms", done, table.getName(), System.currentTimeMillis() - start);
+    return done;
+  }
+
+}
@@ -1,5 +1,7 @@
 package me.whizvox.wsite.database;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.time.Instant;
 
 public class Page {
@@ -10,6 +12,8 @@ public class Page {
   public Syntax syntax;
   public Instant published;
   public Instant lastEdited;
+  @JsonIgnore public String rendered;
+  @JsonIgnore public int rendererVersion;
 
   public Page(String path, String title, String contents, Syntax syntax, Instant published, Instant lastEdited) {
     this.path = path;
@@ -7,67 +7,126 @@ import org.jooq.*;
 import org.jooq.impl.DSL;
 
 import java.sql.Timestamp;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static me.whizvox.wsite.generated.tables.Pages.PAGES;
 
 public class PageRepository extends JooqRepository<Pages> {
 
-  public PageRepository(DSLContext jooq) {
-    super(jooq, Pages.PAGES);
+  public PageRepository(Database database) {
+    super(database, Pages.PAGES);
   }
 
+  /**
+   * @throws DuplicateKeyException If another page already has the path
+   */
   public boolean insert(Page page) {
-    return jooq.insertInto(table)
+    return inserted(write(jooq -> jooq.insertInto(table)
         .set(PARSER.fromPojo(page))
-        .execute() > 0;
+        .execute())) > 0;
   }
 
   public boolean update(Page page) {
-    return jooq.update(table)
+    return write(jooq -> jooq.update(table)
         .set(PARSER.fromPojo(page))
-        .where(table.PATH.equalIgnoreCase(page.path))
-        .execute() > 0;
+        .where(equalIgnoreCase(table.PATH, page.path))
+        .execute() > 0);
+  }
+
+  /**
+   * Moves a page to a new path and updates it in a single statement, so that there's never a moment without it.
+   * @throws DuplicateKeyException If another page already has the new path
+   */
+  public boolean rename(String origPath, Page page) {
+    return write(jooq -> jooq.update(table)
+        .set(PARSER.fromPojo(page))
+        .where(equalIgnoreCase(table.PATH, origPath))
+        .execute() > 0);
   }
 
   public boolean delete(String path) {
-    return jooq.deleteFrom(table)
-        .where(table.PATH.equalIgnoreCase(path))
-        .execute() > 0;
+    return deleted(write(jooq -> jooq.deleteFrom(table)
+        .where(equalIgnoreCase(table.PATH, path))
+        .execute())) > 0;
+  }
+
+  public boolean updateRendered(String path, String rendered, int rendererVersion) {
+    return write(jooq -> jooq.update(table)
+        .set(table.RENDERED, rendered)
+        .set(table.RENDERER_VERSION, rendererVersion)
+        .where(table.PATH.equal(path))
+        .execute() > 0);
   }
 
   public Page selectFromPath(String path) {
-    PagesRecord record = jooq.selectFrom(table)
-        .where(table.PATH.equalIgnoreCase(path))
+    return PARSER.fromRecord(fetchFromPath(path));
+  }
+
+  protected PagesRecord fetchFromPath(String path) {
+    return reader.selectFrom(table)
+        .where(equalIgnoreCase(table.PATH, path))
         .fetchAny();
-    return PARSER.fromRecord(record);
   }
 
   public List<Page> selectFromSyntax(Page.Syntax syntax) {
-    Result<PagesRecord> records = jooq.selectFrom(table)
+    Result<PagesRecord> records = reader.selectFrom(table)
 	.where(table.SYNTAX.equalIgnoreCase(syntax.toString()))
 	.fetch();
     return PARSER.fromRecords(records);
   }
 
-  public List<PageSummary> selectList(int limit, int page, OrderingScheme orderingScheme, boolean descending) {
-    Result<Record6<String, String, Integer, String, Timestamp, Timestamp>> records =
-        jooq.select(PAGES.PATH, PAGES.TITLE, PAGES.CONTENTS.length(), PAGES.SYNTAX, PAGES.PUBLISHED, PAGES.LAST_EDITED)
-        .from(table)
-        .orderBy(descending ? orderingScheme.descFields : orderingScheme.ascFields)
+  public List<Page> selectOutdated(int rendererVersion, String afterPath, int limit) {
+    Condition condition = table.RENDERER_VERSION.isNull().or(table.RENDERER_VERSION.notEqual(rendererVersion));
+    if (afterPath != null) {
+      condition = condition.and(table.PATH.greaterThan(afterPath));
+    }
+    Result<PagesRecord> records = reader.selectFrom(table)
+        .where(condition)
+        .orderBy(table.PATH)
         .limit(limit)
-        .offset(limit * page)
         .fetch();
-    List<PageSummary> summaries = new ArrayList<>(records.size());
-    records.forEach(r -> summaries.add(
-        new PageSummary(r.value1(), r.value2(), r.value3(), r.value4(), r.value5(), r.value6())
-    ));
-    return summaries;
+    return PARSER.fromRecords(records);
   }
 
-  public int getCount() {
-    return jooq.fetchCount(table);
+  public List<String> selectPaths() {
+    return reader.select(table.PATH)
+        .from(table)
+        .fetch(table.PATH);
+  }
+
+  public Map<String, Instant> selectLastModified() {
+    Map<String, Instant> lastModified = new HashMap<>();
+    reader.select(table.PATH, DSL.coalesce(table.LAST_EDITED, table.PUBLISHED))
+        .from(table)
+        .fetch()
+        .forEach(r -> lastModified.put(r.value1(), Utils.timestampToInstant(r.value2())));
+    return lastModified;
+  }
+
+  /**
+   * @throws IllegalArgumentException If <code>after</code> or <code>before</code> is a malformed cursor
+   */
+  public List<PageSummary> selectList(int limit, int page, String after, String before, OrderingScheme orderingScheme,
+                                      boolean descending) {
+    Keyset keyset = orderingScheme.keyset;
+    List<Field<?>> fields = new ArrayList<>(Arrays.asList(
+        PAGES.PATH, PAGES.TITLE, PAGES.CONTENTS.length(), PAGES.SYNTAX, PAGES.PUBLISHED, PAGES.LAST_EDITED
+    ));
+    fields.addAll(Arrays.asList(keyset.getCursorFields()));
+    List<Record> records = fetchPage(reader.select(fields).from(table), keyset, limit, page, after, before, descending);
+    List<PageSummary> summaries = new ArrayList<>(records.size());
+    records.forEach(r -> {
+      PageSummary summary = new PageSummary(r.get(0, String.class), r.get(1, String.class), r.get(2, Integer.class),
+          r.get(3, String.class), r.get(4, Timestamp.class), r.get(5, Timestamp.class));
+      summary.cursor = keyset.encode(r);
+      summaries.add(summary);
+    });
+    return summaries;
   }
 
   static RecordParser<Page, PagesRecord> PARSER = new RecordParser<Page, PagesRecord>() {
@@ -85,6 +144,10 @@ public class PageRepository extends JooqRepository<Pages> {
       if (record.getLastEdited() != null) {
         page.lastEdited = Utils.timestampToInstant(record.getLastEdited());
       }
+      page.rendered = record.getRendered();
+      if (record.getRendererVersion() != null) {
+        page.rendererVersion = record.getRendererVersion();
+      }
       return page;
     }
     @Override
@@ -93,7 +156,8 @@ public class PageRepository extends JooqRepository<Pages> {
         return null;
       }
       return new PagesRecord(page.path, page.title, page.contents, page.syntax.toString(),
-          Timestamp.from(page.published), page.lastEdited == null ? null : Timestamp.from(page.lastEdited));
+          Timestamp.from(page.published), page.lastEdited == null ? null : Timestamp.from(page.lastEdited),
+          page.rendered, page.rendered == null ? null : page.rendererVersion);
     }
   };
 
@@ -104,6 +168,7 @@ public class PageRepository extends JooqRepository<Pages> {
     public String syntax;
     public String published;
     public String lastEdited;
+    public String cursor;
     public PageSummary(String path, String title, int contentLength, String syntax, Timestamp published, Timestamp lastEdited) {
       this.path = path;
       this.title = title;
@@ -117,21 +182,17 @@ public class PageRepository extends JooqRepository<Pages> {
   }
 
   public enum OrderingScheme {
-    PATH(Pages.PAGES.PATH),
-    TITLE(Pages.PAGES.TITLE, Pages.PAGES.PATH),
-    CONTENTS_LENGTH(DSL.charLength(Pages.PAGES.CONTENTS), Pages.PAGES.PATH),
-    SYNTAX(Pages.PAGES.SYNTAX, Pages.PAGES.PATH),
-    PUBLISHED(Pages.PAGES.PUBLISHED, Pages.PAGES.PATH),
-    LAST_EDITED(Pages.PAGES.LAST_EDITED, Pages.PAGES.PATH);
-
-    public final OrderField[] ascFields;
-    public final OrderField[] descFields;
-
-    OrderingScheme(Field... fields) {
-      ascFields = fields;
-      descFields = new OrderField[fields.length];
-      descFields[0] = fields[0].desc();
-      System.arraycopy(fields, 1, descFields, 1, descFields.length - 1);
+    PATH(false, Pages.PAGES.PATH),
+    TITLE(false, Pages.PAGES.TITLE, Pages.PAGES.PATH),
+    CONTENTS_LENGTH(false, DSL.charLength(Pages.PAGES.CONTENTS), Pages.PAGES.PATH),
+    SYNTAX(false, Pages.PAGES.SYNTAX, Pages.PAGES.PATH),
+    PUBLISHED(false, Pages.PAGES.PUBLISHED, Pages.PAGES.PATH),
+    LAST_EDITED(true, Pages.PAGES.LAST_EDITED, Pages.PAGES.PATH);
+
+    public final Keyset keyset;
+
+    OrderingScheme(boolean firstNullable, Field<?>... fields) {
+      keyset = new Keyset(firstNullable, fields);
     }
 
     public static OrderingScheme fromString(String str) {
@@ -0,0 +1,232 @@
+package me.whizvox.wsite.database;
+
+import org.jooq.ExecuteContext;
+import org.jooq.impl.DefaultExecuteListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Times every statement jOOQ executes, grouped by its SQL with the bind values left out, so that the same query made
+ * with different values counts as one. Statements that take longer than the threshold are logged, again without their
+ * bind values, since those can be anything from an email address to a password hash.
+ */
+public class QueryMonitor extends DefaultExecuteListener {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(QueryMonitor.class);
+
+  private static final String EXECUTION = "wsite.queryMonitor";
+  // anything past the maximum number of distinct statements is counted as one of these instead
+  private static final String OTHER = "(other)";
+
+  // upper bounds of each latency bucket, in microseconds. the last bucket is for everything slower
+  private static final long[] BUCKET_BOUNDS = {
+      100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000, 1000000, 2500000
+  };
+
+  private final long slowThresholdNanos;
+  private final int maxStatements;
+  private final Map<String, Statement> statements;
+
+  /**
+   * @param slowThresholdMillis Statements that take at least this long are logged, or 0 to not log any
+   * @param maxStatements How many distinct statements are kept track of
+   */
+  public QueryMonitor(long slowThresholdMillis, int maxStatements) {
+    if (slowThresholdMillis < 0) {
+      throw new IllegalArgumentException("Invalid slow query threshold: " + slowThresholdMillis);
+    }
+    slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+    this.maxStatements = maxStatements;
+    statements = new ConcurrentHashMap<>();
+  }
+
+  @Override
+  public void start(ExecuteContext ctx) {
+    // a wait from before this statement started was for something else
+    ConnectionPool.takeWaitNanos();
+    ctx.data(EXECUTION, new Execution(System.nanoTime()));
+  }
+
+  @Override
+  public void recordEnd(ExecuteContext ctx) {
+    Execution execution = (Execution) ctx.data(EXECUTION);
+    if (execution != null) {
+      execution.fetched++;
+    }
+  }
+
+  @Override
+  public void end(ExecuteContext ctx) {
+    Execution execution = (Execution) ctx.data(EXECUTION);
+    if (execution == null) {
+      return;
+    }
+    long nanos = System.nanoTime() - execution.start;
+    long waitNanos = ConnectionPool.takeWaitNanos();
+    // only set for statements that modify rows
+    long rows = Math.max(ctx.rows(), 0) + execution.fetched;
+    boolean failed = ctx.exception() != null || ctx.sqlException() != null;
+    // such as when reading the database's metadata
+    String sql = ctx.sql() == null ? "(" + ctx.type().toString().toLowerCase() + " without SQL)" : ctx.sql();
+    getStatement(sql).record(nanos, rows, waitNanos, failed);
+    if (slowThresholdNanos > 0 && nanos >= slowThresholdNanos) {
+      int binds = ctx.query() == null ? 0 : ctx.query().getBindValues().size();
+      LOGGER.warn("Slow query took {} ms ({} rows, waited {} ms for a connection): {}{}",
+          nanos / 1000000.0, rows, waitNanos / 1000000.0, sql, binds == 0 ? "" : " [" + binds + " bind values redacted]");
+    }
+  }
+
+  private Statement getStatement(String sql) {
+    Statement statement = statements.get(sql);
+    if (statement == null) {
+      // not exact, a few more than the maximum may get in when they're added at the same time
+      if (statements.size() >= maxStatements) {
+        sql = OTHER;
+      }
+      statement = statements.computeIfAbsent(sql, Statement::new);
+    }
+    return statement;
+  }
+
+  public void clear() {
+    statements.clear();
+  }
+
+  /**
+   * @return Every statement that has been executed, the ones that have taken the most time in total first
+   */
+  public Snapshot getSnapshot() {
+    Snapshot snapshot = new Snapshot();
+    snapshot.slowThresholdMillis = slowThresholdNanos / 1000000.0;
+    snapshot.bucketBoundsMillis = new double[BUCKET_BOUNDS.length];
+    for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+      snapshot.bucketBoundsMillis[i] = BUCKET_BOUNDS[i] / 1000.0;
+    }
+    snapshot.statements = new ArrayList<>(statements.size());
+    statements.values().forEach(statement -> snapshot.statements.add(statement.getStats()));
+    snapshot.statements.sort(Comparator.comparingDouble((Stats stats) -> stats.totalMillis).reversed());
+    return snapshot;
+  }
+
+  private static int getBucket(long nanos) {
+    long micros = nanos / 1000;
+    for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+      if (micros < BUCKET_BOUNDS[i]) {
+        return i;
+      }
+    }
+    return BUCKET_BOUNDS.length;
+  }
+
+  private static class Execution {
+    final long start;
+    // only touched by the thread executing the statement
+    long fetched;
+    Execution(long start) {
+      this.start = start;
+      fetched = 0;
+    }
+  }
+
+  private static class Statement {
+    final String sql;
+    final AtomicLong count;
+    final AtomicLong errors;
+    final AtomicLong totalNanos;
+    final AtomicLong maxNanos;
+    final AtomicLong rows;
+    final AtomicLong waitNanos;
+    final AtomicLongArray buckets;
+    Statement(String sql) {
+      this.sql = sql;
+      count = new AtomicLong(0);
+      errors = new AtomicLong(0);
+      totalNanos = new AtomicLong(0);
+      maxNanos = new AtomicLong(0);
+      rows = new AtomicLong(0);
+      waitNanos = new AtomicLong(0);
+      buckets = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+    }
+    void record(long nanos, long rows, long waitNanos, boolean failed) {
+      count.incrementAndGet();
+      if (failed) {
+        errors.incrementAndGet();
+      }
+      totalNanos.addAndGet(nanos);
+      maxNanos.accumulateAndGet(nanos, Math::max);
+      this.rows.addAndGet(rows);
+      this.waitNanos.addAndGet(waitNanos);
+      buckets.incrementAndGet(getBucket(nanos));
+    }
+    Stats getStats() {
+      Stats stats = new Stats();
+      stats.sql = sql;
+      stats.count = count.get();
+      stats.errors = errors.get();
+      stats.totalMillis = totalNanos.get() / 1000000.0;
+      stats.maxMillis = maxNanos.get() / 1000000.0;
+      stats.averageMillis = stats.count == 0 ? 0 : stats.totalMillis / stats.count;
+      stats.rows = rows.get();
+      stats.connectionWaitMillis = waitNanos.get() / 1000000.0;
+      stats.buckets = new long[buckets.length()];
+      for (int i = 0; i < stats.buckets.length; i++) {
+        stats.buckets[i] = buckets.get(i);
+      }
+      stats.p50Millis = getPercentile(stats, 0.5);
+      stats.p95Millis = getPercentile(stats, 0.95);
+      stats.p99Millis = getPercentile(stats, 0.99);
+      return stats;
+    }
+    // only as precise as the buckets are: it's the upper bound of the bucket the percentile falls in
+    static double getPercentile(Stats stats, double percentile) {
+      long total = 0;
+      for (long bucket : stats.buckets) {
+        total += bucket;
+      }
+      long target = (long) Math.ceil(total * percentile);
+      long seen = 0;
+      for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+        seen += stats.buckets[i];
+        if (seen >= target && seen > 0) {
+          return Math.min(BUCKET_BOUNDS[i] / 1000.0, stats.maxMillis);
+        }
+      }
+      return stats.maxMillis;
+    }
+  }
+
+  public static class Stats {
+    public String sql;
+    public long count;
+    public long errors;
+    public double totalMillis;
+    public double averageMillis;
+    public double maxMillis;
+    public double p50Millis;
+    public double p95Millis;
+    public double p99Millis;
+    // fetched by queries, or changed by everything else
+    public long rows;
+    public double connectionWaitMillis;
+    // how many executions fell into each of the snapshot's buckets
+    public long[] buckets;
+  }
+
+  public static class Snapshot {
+    public double slowThresholdMillis;
+    public double[] bucketBoundsMillis;
+    public List<Stats> statements;
+  }
+
+}
@@ -3,82 +3,163 @@ package me.whizvox.wsite.database;
 import me.whizvox.wsite.generated.tables.Users;
 import me.whizvox.wsite.generated.tables.records.UsersRecord;
 import me.whizvox.wsite.util.Utils;
-import org.jooq.DSLContext;
-import org.jooq.Field;
-import org.jooq.OrderField;
-import org.jooq.Result;
+import org.jooq.*;
+import org.jooq.impl.DSL;
 
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 public class UserRepository extends JooqRepository<Users> {
 
-  public UserRepository(DSLContext jooq) {
-    super(jooq, Users.USERS);
+  public UserRepository(Database database) {
+    super(database, Users.USERS);
   }
 
+  /**
+   * @throws DuplicateKeyException If another user already has the username or email address
+   */
   public boolean insert(User user) {
-    return jooq.insertInto(table)
+    return inserted(write(jooq -> jooq.insertInto(table)
         .set(PARSER.fromPojo(user))
-        .execute() > 0;
+        .execute())) > 0;
   }
 
   public boolean update(User user) {
     UsersRecord record = PARSER.fromPojo(user);
-    return jooq.update(table)
+    return write(jooq -> jooq.update(table)
         .set(record)
         .where(table.ID.equal(record.getId()))
-        .execute() > 0;
+        .execute() > 0);
+  }
+
+  /**
+   * Changes only the given fields of a user, leaving the ones that are null as they are. Nothing is changed if another
+   * user already has the new username or email address.
+   */
+  public Patch patch(UUID id, String username, String emailAddress, String password, Boolean operator) {
+    try {
+      return write(jooq -> jooq.transactionResult(config -> {
+        DSLContext tx = DSL.using(config);
+        Patch patch = checkConflicts(tx, id, username, emailAddress);
+        if (patch.usernameConflict || patch.emailAddressConflict) {
+          return patch;
+        }
+        Map<Field<?>, Object> changes = new HashMap<>();
+        if (username != null) {
+          changes.put(table.USERNAME, username);
+        }
+        if (emailAddress != null) {
+          changes.put(table.EMAIL_ADDRESS, emailAddress);
+        }
+        if (password != null) {
+          changes.put(table.PASSWORD, password);
+        }
+        if (operator != null) {
+          changes.put(table.OPERATOR, operator);
+        }
+        if (!changes.isEmpty()) {
+          patch.updated = tx.update(table)
+              .set(changes)
+              .where(table.ID.equal(id.toString()))
+              .execute() > 0;
+        }
+        return patch;
+      }));
+    } catch (DuplicateKeyException e) {
+      // another user was given the username or email address after it was checked, which is committed by now
+      Patch patch = checkConflicts(reader, id, username, emailAddress);
+      if (!patch.usernameConflict && !patch.emailAddressConflict) {
+        throw e;
+      }
+      return patch;
+    }
+  }
+
+  private Patch checkConflicts(DSLContext jooq, UUID id, String username, String emailAddress) {
+    Patch patch = new Patch();
+    if (username != null || emailAddress != null) {
+      // counted separately rather than with a single OR, since the username and email address each get a result of
+      // their own saying whether they're the one that's taken
+      Record2<Integer, Integer> taken = jooq.select(
+          countOthers(id, username == null ? null : equalIgnoreCase(table.USERNAME, username)),
+          countOthers(id, emailAddress == null ? null : equalIgnoreCase(table.EMAIL_ADDRESS, emailAddress)))
+          .fetchOne();
+      patch.usernameConflict = taken.value1() > 0;
+      patch.emailAddressConflict = taken.value2() > 0;
+    }
+    return patch;
+  }
+
+  private Field<Integer> countOthers(UUID id, Condition condition) {
+    if (condition == null) {
+      return DSL.inline(0);
+    }
+    return DSL.selectCount()
+        .from(table)
+        .where(table.ID.notEqual(id.toString()).and(condition))
+        .asField();
   }
 
   public boolean delete(UUID id) {
-    return jooq.deleteFrom(table)
+    return deleted(write(jooq -> jooq.deleteFrom(table)
         .where(table.ID.eq(id.toString()))
-        .execute() > 0;
+        .execute())) > 0;
   }
 
   public User selectFromId(UUID id) {
-    UsersRecord record = jooq.selectFrom(table)
+    return PARSER.fromRecord(fetchFromId(id));
+  }
+
+  protected UsersRecord fetchFromId(UUID id) {
+    return reader.selectFrom(table)
         .where(table.ID.eq(id.toString()))
         .fetchAny();
-    return PARSER.fromRecord(record);
   }
 
   public User selectFromUsername(String username) {
-    UsersRecord record = jooq.selectFrom(table)
-        .where(table.USERNAME.equalIgnoreCase(username))
+    return PARSER.fromRecord(fetchFromUsername(username));
+  }
+
+  protected UsersRecord fetchFromUsername(String username) {
+    return reader.selectFrom(table)
+        .where(equalIgnoreCase(table.USERNAME, username))
         .fetchAny();
-    return PARSER.fromRecord(record);
   }
 
   public User selectFromEmailAddress(String emailAddress) {
-    UsersRecord record = jooq.selectFrom(table)
-        .where(table.EMAIL_ADDRESS.equalIgnoreCase(emailAddress))
+    return PARSER.fromRecord(fetchFromEmailAddress(emailAddress));
+  }
+
+  protected UsersRecord fetchFromEmailAddress(String emailAddress) {
+    return reader.selectFrom(table)
+        .where(equalIgnoreCase(table.EMAIL_ADDRESS, emailAddress))
         .fetchAny();
-    return PARSER.fromRecord(record);
   }
 
   public List<User> selectWhenCreated(Instant instant, boolean before) {
     Timestamp ts = Timestamp.from(instant);
-    Result<UsersRecord> records = jooq.selectFrom(table)
+    Result<UsersRecord> records = reader.selectFrom(table)
         .where(before ? table.WHEN_CREATED.lessOrEqual(ts) : table.WHEN_CREATED.greaterOrEqual(ts))
         .fetch();
     return PARSER.fromRecords(records);
   }
 
-  public List<User> selectAll(int limit, int page, OrderingScheme orderingScheme, boolean descending) {
-    Result<UsersRecord> records = jooq.selectFrom(table)
-        .orderBy(descending ? orderingScheme.descFields : orderingScheme.ascFields)
-        .limit(limit)
-        .offset(limit * page)
-        .fetch();
-    return PARSER.fromRecords(records);
-  }
-
-  public int selectNumberOfUsers() {
-    return jooq.fetchCount(table);
+  /**
+   * @throws IllegalArgumentException If <code>after</code> or <code>before</code> is a malformed cursor
+   */
+  public List<Keyset.Row<User>> selectAll(int limit, int page, String after, String before,
+                                          OrderingScheme orderingScheme, boolean descending) {
+    Keyset keyset = orderingScheme.keyset;
+    List<Record> records = fetchPage(reader.select(table.fields()).select(keyset.getCursorFields()).from(table), keyset,
+        limit, page, after, before, descending);
+    List<Keyset.Row<User>> users = new ArrayList<>(records.size());
+    records.forEach(record -> users.add(new Keyset.Row<>(PARSER.fromRecord(record.into(table)), keyset.encode(record))));
+    return users;
   }
 
   static RecordParser<User, UsersRecord> PARSER = new RecordParser<User, UsersRecord>() {
@@ -106,21 +187,23 @@ public class UserRepository extends JooqRepository<Users> {
     }
   };
 
+  public static class Patch {
+    public boolean usernameConflict;
+    public boolean emailAddressConflict;
+    // false if there was a conflict, nothing to change or no user with the id
+    public boolean updated;
+  }
+
   public enum OrderingScheme {
-    USERNAME(Users.USERS.USERNAME),
-    EMAIL(Users.USERS.EMAIL_ADDRESS),
-    OPERATOR(Users.USERS.OPERATOR, Users.USERS.USERNAME),
-    WHEN_CREATED(Users.USERS.WHEN_CREATED, Users.USERS.USERNAME);
-
-    public OrderField[] ascFields;
-    public OrderField[] descFields;
-    OrderingScheme(Field... fields) {
-      this.ascFields = fields;
-      descFields = new OrderField[fields.length];
-      descFields[0] = fields[0].desc();
-      if (fields.length > 1) {
-        System.arraycopy(fields, 1, descFields, 1, fields.length - 1);
-      }
+    USERNAME(false, Users.USERS.USERNAME),
+    EMAIL(false, Users.USERS.EMAIL_ADDRESS),
+    OPERATOR(false, Users.USERS.OPERATOR, Users.USERS.USERNAME),
+    WHEN_CREATED(false, Users.USERS.WHEN_CREATED, Users.USERS.USERNAME);
+
+    public final Keyset keyset;
+
+    OrderingScheme(boolean firstNullable, Field<?>... fields) {
+      keyset = new Keyset(firstNullable, fields);
     }
 
     public static OrderingScheme fromString(String str) {
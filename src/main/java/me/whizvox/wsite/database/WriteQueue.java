@@ -0,0 +1,177 @@
+package me.whizvox.wsite.database;
+
+import org.jooq.DSLContext;
+import org.jooq.exception.DataAccessException;
+import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Runs every write on a single thread. Writes that are submitted while another batch is being written are grouped
+ * into a single transaction, so that they share one commit (and one sync to disk) instead of each waiting on their own.
+ * Each write gets a savepoint of its own, so one that fails doesn't take the others in its batch down with it.
+ */
+public class WriteQueue implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WriteQueue.class);
+
+  private final DSLContext context;
+  private final int maxBatchSize;
+  private final BlockingQueue<Task<?>> queue;
+  private final Thread thread;
+  private volatile boolean running;
+
+  private final AtomicLong writes;
+  private final AtomicLong batches;
+
+  public WriteQueue(DSLContext context, int maxBatchSize) {
+    this.context = context;
+    this.maxBatchSize = maxBatchSize;
+    queue = new LinkedBlockingQueue<>();
+    writes = new AtomicLong(0);
+    batches = new AtomicLong(0);
+    running = true;
+    thread = new Thread(this::run, "wsite-db-writer");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Waits until the write has been committed.
+   */
+  public <T> T submit(Function<DSLContext, T> write) throws DataAccessException {
+    if (Thread.currentThread() == thread) {
+      throw new IllegalStateException("Cannot submit a write from within another write");
+    }
+    if (!running) {
+      throw new DataAccessException("The write queue has been closed");
+    }
+    Task<T> task = new Task<>(write);
+    queue.add(task);
+    try {
+      return task.future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DataAccessException("Interrupted while waiting for a write to be committed", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new DataAccessException("Could not write to the database", e.getCause());
+    }
+  }
+
+  private void run() {
+    List<Task<?>> batch = new ArrayList<>();
+    while (running || !queue.isEmpty()) {
+      try {
+        Task<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+      } catch (InterruptedException e) {
+        continue;
+      }
+      queue.drainTo(batch, maxBatchSize - 1);
+      write(batch);
+      batch.clear();
+    }
+  }
+
+  private void write(List<Task<?>> batch) {
+    batches.incrementAndGet();
+    writes.addAndGet(batch.size());
+    if (batch.size() == 1) {
+      // a single write is already atomic on its own
+      Task<?> task = batch.get(0);
+      try {
+        task.run(context);
+      } catch (RuntimeException | Error ignored) {}
+      task.complete();
+      return;
+    }
+    try {
+      context.transaction(config -> {
+        DSLContext tx = DSL.using(config);
+        for (Task<?> task : batch) {
+          try {
+            tx.transaction(nested -> task.run(DSL.using(nested)));
+          } catch (RuntimeException ignored) {
+            // only this write's savepoint is rolled back, its caller is told once the batch is done
+          }
+        }
+      });
+      batch.forEach(Task::complete);
+    } catch (RuntimeException | Error e) {
+      LOGGER.error("Could not commit a batch of {} writes", batch.size(), e);
+      batch.forEach(task -> task.fail(e));
+    }
+  }
+
+  public long getWriteCount() {
+    return writes.get();
+  }
+
+  public long getBatchCount() {
+    return batches.get();
+  }
+
+  /**
+   * Writes whatever is still queued up before returning.
+   */
+  @Override
+  public void close() {
+    running = false;
+    try {
+      thread.join(TimeUnit.SECONDS.toMillis(10));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    // anything that was submitted just as the queue was closed
+    Task<?> task;
+    while ((task = queue.poll()) != null) {
+      task.fail(new DataAccessException("The write queue has been closed"));
+    }
+  }
+
+  private static class Task<T> {
+    final Function<DSLContext, T> write;
+    final CompletableFuture<T> future;
+    T result;
+    Throwable error;
+    Task(Function<DSLContext, T> write) {
+      this.write = write;
+      future = new CompletableFuture<>();
+    }
+    // failures are rethrown so that the write is rolled back, but also kept to hand to the caller later
+    void run(DSLContext context) {
+      try {
+        result = write.apply(context);
+      } catch (RuntimeException | Error e) {
+        error = e;
+        throw e;
+      }
+    }
+    void complete() {
+      if (error != null) {
+        future.completeExceptionally(error);
+      } else {
+        future.complete(result);
+      }
+    }
+    void fail(Throwable e) {
+      future.completeExceptionally(error != null ? error : e);
+    }
+  }
+
+}
@@ -29,10 +29,18 @@ public class EventManager {
   }
 
   public void tick() {
-    events.forEach(event -> Optional.ofNullable(listeners.getOrDefault(event.getClass(), null)).ifPresent(
+    // events can be posted from any thread, including by the listeners themselves
+    List<Object> posted;
+    synchronized (this) {
+      if (events.isEmpty()) {
+        return;
+      }
+      posted = new ArrayList<>(events);
+      events.clear();
+    }
+    posted.forEach(event -> Optional.ofNullable(listeners.getOrDefault(event.getClass(), null)).ifPresent(
         listeners -> listeners.forEach(listener -> listener.onEvent(event)))
     );
-    events.clear();
   }
 
 }
@@ -41,7 +41,7 @@ import org.jooq.impl.TableImpl;
 @SuppressWarnings({ "all", "unchecked", "rawtypes" })
 public class Pages extends TableImpl<PagesRecord> {
 
-    private static final long serialVersionUID = -1085746939;
+    private static final long serialVersionUID = 1617532471;
 
     /**
      * The reference instance of <code>pages</code>
@@ -86,6 +86,16 @@ public class Pages extends TableImpl<PagesRecord> {
      */
     public final TableField<PagesRecord, Timestamp> LAST_EDITED = createField("last_edited", org.jooq.impl.SQLDataType.TIMESTAMP, this, "");
 
+    /**
+     * The column <code>pages.rendered</code>.
+     */
+    public final TableField<PagesRecord, String> RENDERED = createField("rendered", org.jooq.impl.SQLDataType.CLOB, this, "");
+
+    /**
+     * The column <code>pages.renderer_version</code>.
+     */
+    public final TableField<PagesRecord, Integer> RENDERER_VERSION = createField("renderer_version", org.jooq.impl.SQLDataType.INTEGER, this, "");
+
     /**
      * Create a <code>pages</code> table reference
      */
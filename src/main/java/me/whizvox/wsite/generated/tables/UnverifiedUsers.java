@@ -79,7 +79,7 @@ public class UnverifiedUsers extends TableImpl<UnverifiedUsersRecord> {
     /**
      * The column <code>unverified_users.password</code>.
      */
-    public final TableField<UnverifiedUsersRecord, String> PASSWORD = createField("password", org.jooq.impl.SQLDataType.CHAR(40).nullable(false), this, "");
+    public final TableField<UnverifiedUsersRecord, String> PASSWORD = createField("password", org.jooq.impl.SQLDataType.VARCHAR(384).nullable(false), this, "");
 
     /**
      * Create a <code>unverified_users</code> table reference
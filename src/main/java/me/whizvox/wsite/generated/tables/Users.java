@@ -74,7 +74,7 @@ public class Users extends TableImpl<UsersRecord> {
     /**
      * The column <code>users.password</code>.
      */
-    public final TableField<UsersRecord, String> PASSWORD = createField("password", org.jooq.impl.SQLDataType.CHAR(40).nullable(false), this, "");
+    public final TableField<UsersRecord, String> PASSWORD = createField("password", org.jooq.impl.SQLDataType.VARCHAR(384).nullable(false), this, "");
 
     /**
      * The column <code>users.operator</code>.
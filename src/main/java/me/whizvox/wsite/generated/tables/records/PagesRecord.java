@@ -12,8 +12,8 @@ import me.whizvox.wsite.generated.tables.Pages;
 
 import org.jooq.Field;
 import org.jooq.Record1;
-import org.jooq.Record6;
-import org.jooq.Row6;
+import org.jooq.Record8;
+import org.jooq.Row8;
 import org.jooq.impl.UpdatableRecordImpl;
 
 
@@ -28,9 +28,9 @@ import org.jooq.impl.UpdatableRecordImpl;
     comments = "This class is generated by jOOQ"
 )
 @SuppressWarnings({ "all", "unchecked", "rawtypes" })
-public class PagesRecord extends UpdatableRecordImpl<PagesRecord> implements Record6<String, String, String, String, Timestamp, Timestamp> {
+public class PagesRecord extends UpdatableRecordImpl<PagesRecord> implements Record8<String, String, String, String, Timestamp, Timestamp, String, Integer> {
 
-    private static final long serialVersionUID = 1868773809;
+    private static final long serialVersionUID = -1208733562;
 
     /**
      * Setter for <code>pages.path</code>.
@@ -116,6 +116,34 @@ public class PagesRecord extends UpdatableRecordImpl<PagesRecord> implements Rec
         return (Timestamp) get(5);
     }
 
+    /**
+     * Setter for <code>pages.rendered</code>.
+     */
+    public void setRendered(String value) {
+        set(6, value);
+    }
+
+    /**
+     * Getter for <code>pages.rendered</code>.
+     */
+    public String getRendered() {
+        return (String) get(6);
+    }
+
+    /**
+     * Setter for <code>pages.renderer_version</code>.
+     */
+    public void setRendererVersion(Integer value) {
+        set(7, value);
+    }
+
+    /**
+     * Getter for <code>pages.renderer_version</code>.
+     */
+    public Integer getRendererVersion() {
+        return (Integer) get(7);
+    }
+
     // -------------------------------------------------------------------------
     // Primary key information
     // -------------------------------------------------------------------------
@@ -129,23 +157,23 @@ public class PagesRecord extends UpdatableRecordImpl<PagesRecord> implements Rec
     }
 
     // -------------------------------------------------------------------------
-    // Record6 type implementation
+    // Record8 type implementation
     // -------------------------------------------------------------------------
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public Row6<String, String, String, String, Timestamp, Timestamp> fieldsRow() {
-        return (Row6) super.fieldsRow();
+    public Row8<String, String, String, String, Timestamp, Timestamp, String, Integer> fieldsRow() {
+        return (Row8) super.fieldsRow();
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public Row6<String, String, String, String, Timestamp, Timestamp> valuesRow() {
-        return (Row6) super.valuesRow();
+    public Row8<String, String, String, String, Timestamp, Timestamp, String, Integer> valuesRow() {
+        return (Row8) super.valuesRow();
     }
 
     /**
@@ -196,6 +224,22 @@ public class PagesRecord extends UpdatableRecordImpl<PagesRecord> implements Rec
         return Pages.PAGES.LAST_EDITED;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Field<String> field7() {
+        return Pages.PAGES.RENDERED;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Field<Integer> field8() {
+        return Pages.PAGES.RENDERER_VERSION;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -244,6 +288,22 @@ public class PagesRecord extends UpdatableRecordImpl<PagesRecord> implements Rec
         return getLastEdited();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String component7() {
+        return getRendered();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer component8() {
+        return getRendererVersion();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -292,6 +352,22 @@ public class PagesRecord extends UpdatableRecordImpl<PagesRecord> implements Rec
         return getLastEdited();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String value7() {
+        return getRendered();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer value8() {
+        return getRendererVersion();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -350,13 +426,33 @@ public class PagesRecord extends UpdatableRecordImpl<PagesRecord> implements Rec
      * {@inheritDoc}
      */
     @Override
-    public PagesRecord values(String value1, String value2, String value3, String value4, Timestamp value5, Timestamp value6) {
+    public PagesRecord value7(String value) {
+        setRendered(value);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PagesRecord value8(Integer value) {
+        setRendererVersion(value);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PagesRecord values(String value1, String value2, String value3, String value4, Timestamp value5, Timestamp value6, String value7, Integer value8) {
         value1(value1);
         value2(value2);
         value3(value3);
         value4(value4);
         value5(value5);
         value6(value6);
+        value7(value7);
+        value8(value8);
         return this;
     }
 
@@ -374,7 +470,7 @@ public class PagesRecord extends UpdatableRecordImpl<PagesRecord> implements Rec
     /**
      * Create a detached, initialised PagesRecord
      */
-    public PagesRecord(String path, String title, String contents, String syntax, Timestamp published, Timestamp lastEdited) {
+    public PagesRecord(String path, String title, String contents, String syntax, Timestamp published, Timestamp lastEdited, String rendered, Integer rendererVersion) {
         super(Pages.PAGES);
 
         set(0, path);
@@ -383,5 +479,7 @@ public class PagesRecord extends UpdatableRecordImpl<PagesRecord> implements Rec
         set(3, syntax);
         set(4, published);
         set(5, lastEdited);
+        set(6, rendered);
+        set(7, rendererVersion);
     }
 }
@@ -2,6 +2,7 @@ package me.whizvox.wsite.util;
 
 import spark.QueryParamsMap;
 import spark.Request;
+import spark.Response;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.Part;
@@ -10,6 +11,8 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Optional;
 import java.util.UUID;
@@ -139,6 +142,75 @@ public class HttpUtils {
     return Base64.getDecoder().decode(str);
   }
 
+  public static String createEtag(byte[] digest) {
+    // half of a SHA-256 digest is plenty to tell versions of the same resource apart
+    return '"' + Utils.hexStringFromBytes(Arrays.copyOf(digest, Math.min(digest.length, 16))) + '"';
+  }
+
+  public static void setCacheValidators(Response response, String etag, Instant lastModified) {
+    response.header("ETag", etag);
+    if (lastModified != null) {
+      response.raw().setDateHeader("Last-Modified", lastModified.toEpochMilli());
+    }
+    // pages and assets can be edited at any time, so clients must always revalidate their copies
+    response.header("Cache-Control", "no-cache");
+  }
+
+  public static boolean isNotModified(Request request, String etag, Instant lastModified) {
+    String ifNoneMatch = request.headers("If-None-Match");
+    if (ifNoneMatch != null) {
+      for (String tag : ifNoneMatch.split(",")) {
+        tag = tag.trim();
+        if (tag.startsWith("W/")) {
+          tag = tag.substring(2);
+        }
+        if (tag.equals("*") || tag.equals(etag)) {
+          return true;
+        }
+      }
+      // If-Modified-Since must be ignored if If-None-Match is present
+      return false;
+    }
+    if (lastModified != null) {
+      long ifModifiedSince;
+      try {
+        ifModifiedSince = request.raw().getDateHeader("If-Modified-Since");
+      } catch (IllegalArgumentException e) {
+        return false;
+      }
+      // HTTP dates only have a precision of seconds
+      return ifModifiedSince != -1 && lastModified.getEpochSecond() * 1000 <= ifModifiedSince;
+    }
+    return false;
+  }
+
+  public static boolean acceptsGzip(Request request) {
+    String acceptEncoding = request.headers("Accept-Encoding");
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String coding : acceptEncoding.split(",")) {
+      String[] params = coding.split(";");
+      String name = params[0].trim();
+      if (name.equalsIgnoreCase("gzip") || name.equals("*")) {
+        // a quality value of 0 explicitly forbids the coding
+        for (int i = 1; i < params.length; i++) {
+          String param = params[i].trim();
+          if (param.startsWith("q=") && param.substring(2).matches("0(\\.0{0,3})?")) {
+            return false;
+          }
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // different encodings of a resource must have different strong ETags
+  public static String createGzipEtag(String etag) {
+    return etag.substring(0, etag.length() - 1) + "-gzip\"";
+  }
+
   public static Path copyFile(Request request, String key, Path output, boolean isDir) throws IOException, ServletException {
     Part part = request.raw().getPart(key);
     if (part != null) {
@@ -1,12 +1,17 @@
 package me.whizvox.wsite.util;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 public class IOUtils {
 
@@ -54,6 +59,25 @@ public class IOUtils {
     }
   }
 
+  public static void deleteDirectory(Path path) throws IOException {
+    if (!Files.exists(path)) {
+      return;
+    }
+    Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
   public static boolean doesFileExist(Path path) {
     return Files.exists(path) && Files.isRegularFile(path);
   }
@@ -111,6 +135,38 @@ public class IOUtils {
     Files.write(output, str.getBytes(StandardCharsets.UTF_8));
   }
 
+  // compressing is only ever done once per version of a resource, so it may as well be as small as possible
+  private static GZIPOutputStream createGzipStream(OutputStream out) throws IOException {
+    return new GZIPOutputStream(out) {
+      {
+        def.setLevel(Deflater.BEST_COMPRESSION);
+      }
+    };
+  }
+
+  public static byte[] gzip(byte[] bytes) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+    try (GZIPOutputStream gzipOut = createGzipStream(out)) {
+      gzipOut.write(bytes);
+    } catch (IOException e) {
+      // shouldn't ever happen when writing to memory
+      throw new IllegalArgumentException("Could not compress bytes", e);
+    }
+    return out.toByteArray();
+  }
+
+  public static byte[] gunzip(byte[] bytes) throws IOException {
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+      return readBytesFromStream(in);
+    }
+  }
+
+  public static void gzip(Path input, Path output) throws IOException {
+    try (OutputStream out = createGzipStream(Files.newOutputStream(output))) {
+      Files.copy(input, out);
+    }
+  }
+
   public static void cleanupEmptyDirectories(Path root) throws IOException {
     Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
       @Override
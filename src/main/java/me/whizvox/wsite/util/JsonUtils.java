@@ -19,6 +19,10 @@ public class JsonUtils {
     MAPPER.writeValue(out, obj);
   }
 
+  public static <T> T fromJson(String json, Class<T> cls) throws IOException {
+    return MAPPER.readValue(json, cls);
+  }
+
   public static String toJson(Object obj) {
     try {
       return MAPPER.writeValueAsString(obj);
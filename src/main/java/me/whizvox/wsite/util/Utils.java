@@ -11,6 +11,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.LocalDateTime;
@@ -54,6 +56,19 @@ public class Utils {
     return sb.toString();
   }
 
+  public static MessageDigest createSha256Digest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public static byte[] sha256(String str) {
+    return createSha256Digest().digest(str.getBytes(StandardCharsets.UTF_8));
+  }
+
   public static boolean isNullOrEmpty(String str) {
     return str == null || str.isEmpty();
   }
@@ -281,47 +281,34 @@ function updateAssetInfo() {
   });
 }
 
-function insertPages(pagesElement, currentPage, maxPages, params) {
+// links to the pages right before and right after the rows being shown, using the cursors of the first and last rows
+function insertCursorPages(pagesElement, params, rows, limit) {
   deleteAllChildNodes(pagesElement);
-
-  if (currentPage > 0) {
-    if (currentPage > 1) {
-      let firstPage = document.createElement("a");
-      params.set("page", 0);
-      firstPage.setAttribute("href", window.location.href.split("?")[0] + "?" + params.toString());
-      firstPage.setAttribute("class", "page firstPage");
-      firstPage.appendChild(document.createTextNode(0));
-      pagesElement.appendChild(firstPage);
+  let paged = params.has("after") || params.has("before");
+  let addLink = function(className, text, key, cursor) {
+    let linkParams = new URLSearchParams(params.toString());
+    linkParams.delete("after");
+    linkParams.delete("before");
+    linkParams.delete("page");
+    if (key !== null) {
+      linkParams.set(key, cursor);
     }
-    let prevPage = document.createElement("a");
-    params.set("page", currentPage - 1);
-    prevPage.setAttribute("href", window.location.href.split("?")[0] + "?" + params.toString());
-    prevPage.setAttribute("class", "page prevPage");
-    prevPage.appendChild(document.createTextNode(currentPage - 1));
-    pagesElement.appendChild(prevPage);
+    let link = document.createElement("a");
+    link.setAttribute("href", window.location.href.split("?")[0] + "?" + linkParams.toString());
+    link.setAttribute("class", "page " + className);
+    link.appendChild(document.createTextNode(text));
+    pagesElement.appendChild(link);
+  };
+  if (paged) {
+    addLink("firstPage", "First", null, null);
   }
-
-  let currPage = document.createElement("a");
-  params.set("page", currentPage);
-  currPage.setAttribute("href", window.location.href.split("?")[0] + "?" + params.toString());
-  currPage.setAttribute("class", "page currentPage");
-  currPage.appendChild(document.createTextNode(currentPage));
-  pagesElement.appendChild(currPage);
-
-  if (currentPage < maxPages) {
-    let nextPage = document.createElement("a");
-    params.set("page", +currentPage + 1);
-    nextPage.setAttribute("href", window.location.href.split("?")[0] + "?" + params.toString());
-    nextPage.setAttribute("class", "page nextPage");
-    nextPage.appendChild(document.createTextNode(+currentPage + 1));
-    pagesElement.appendChild(nextPage);
-    if (currentPage < maxPages - 1) {
-      let lastPage = document.createElement("a");
-      params.set("page", maxPages);
-      lastPage.setAttribute("href", window.location.href.split("?")[0] + "?" + params.toString());
-      lastPage.setAttribute("class", "page lastPage");
-      lastPage.appendChild(document.createTextNode(maxPages));
-      pagesElement.appendChild(lastPage);
+  if (rows.length > 0) {
+    // a page that came up short has run into the start or end of the list
+    if (params.has("after") || (params.has("before") && rows.length === limit)) {
+      addLink("prevPage", "Previous", "before", rows[0].cursor);
+    }
+    if (params.has("before") || rows.length === limit) {
+      addLink("nextPage", "Next", "after", rows[rows.length - 1].cursor);
     }
   }
 }
@@ -338,6 +325,9 @@ function updateUsersList(init) {
     params.set("order", order);
     descending = $("usersListDesc").checked;
     params.set("desc", descending);
+    // cursors only make sense in the ordering they came from
+    params.delete("after");
+    params.delete("before");
   } else {
     limit = 20;
     if (params.has("limit")) {
@@ -360,15 +350,15 @@ function updateUsersList(init) {
   } else if (limit < 5) {
     limit = 5;
   }
-  let page = 0;
-  if (params.has("page")) {
-    page = +params.get("page");
-  }
   let args = new Map();
   args.set("limit", limit);
-  args.set("page", page);
   args.set("order", order);
   args.set("desc", descending);
+  if (params.has("after")) {
+    args.set("after", params.get("after"));
+  } else if (params.has("before")) {
+    args.set("before", params.get("before"));
+  }
   addLoginToken(args);
   handleAsyncJsonRequest("/api/user/list", encodeMap(args), function(res) {
     if (res.hasOwnProperty("success")) {
@@ -385,16 +375,7 @@ function updateUsersList(init) {
         row.insertCell().appendChild(document.createTextNode(user.operator));
         row.insertCell().appendChild(document.createTextNode(user.created));
       }
-    }
-  });
-  handleAsyncJsonRequest("/api/user/count", null, function(res) {
-    if (res.hasOwnProperty("success")) {
-      displayError("Count not retrieve count of users: " + res.message);
-    } else {
-      let pages = $("pages");
-      let count = res.count;
-      let maxPages = Math.floor(count / limit);
-      insertPages(pages, page, maxPages, params);
+      insertCursorPages($("pages"), params, res, limit);
     }
   });
 }
@@ -411,6 +392,9 @@ function updatePagesList(init) {
     params.set("order", order);
     descending = $("listPagesDesc").checked;
     params.set("desc", descending);
+    // cursors only make sense in the ordering they came from
+    params.delete("after");
+    params.delete("before");
   } else {
     limit = 20;
     if (params.has("limit")) {
@@ -428,16 +412,15 @@ function updatePagesList(init) {
     }
     $("listPagesDesc").checked = descending;
   }
-  let page = 0;
-  if (params.has("page")) {
-    page = +params.get("page");
-  }
-
   let args = new Map();
   args.set("limit", limit);
   args.set("order", order);
   args.set("desc", descending);
-  args.set("page", page);
+  if (params.has("after")) {
+    args.set("after", params.get("after"));
+  } else if (params.has("before")) {
+    args.set("before", params.get("before"));
+  }
   addLoginToken(args);
   handleAsyncJsonRequest("/api/page/list", encodeMap(args), function(res) {
     if (res.hasOwnProperty("success")) {
@@ -462,16 +445,7 @@ function updatePagesList(init) {
         }
         row.insertCell().appendChild(lastEditedNode);
       }
-    }
-  });
-  handleAsyncJsonRequest("/api/page/count", null, function(res) {
-    if (res.hasOwnProperty("success")) {
-      displayError("Could not retrieve page count" + res.message);
-    } else {
-      let pages = $("pages");
-      let count = res.count;
-      let maxPages = Math.floor(count / limit);
-      insertPages(pages, page, maxPages, params);
+      insertCursorPages($("pages"), params, res, limit);
     }
   });
 }
@@ -521,3 +495,100 @@ function reloadProtectedAssets() {
     }
   }, "post");
 }
+
+function exportPages(full) {
+  let args = new Map();
+  addLoginToken(args);
+  args.set("full", full);
+  handleAsyncJsonRequest("/api/page/export", encodeMap(args), function(res) {
+    if (!res.success) {
+      displayError(res.message);
+    } else {
+      alert("Exported " + res.exported + " page(s), removed " + res.removed + ", " + res.unchanged + " unchanged");
+    }
+  }, "post");
+}
+
+function updateQueryStats() {
+  let args = new Map();
+  addLoginToken(args);
+  handleAsyncJsonRequest("/api/database/queries", encodeMap(args), function(res) {
+    if (res.hasOwnProperty("success")) {
+      displayError("Could not retrieve query statistics: " + res.message);
+      return;
+    }
+    $("queryStatsStatus").textContent = res.statements.length + " statement(s), slowest first by total time" +
+        (res.slowThresholdMillis > 0 ? ", logging any that take " + res.slowThresholdMillis + " ms or longer" : "");
+    let queryStats = $("queryStats");
+    deleteTableRows(queryStats);
+    res.statements.forEach(function(stats) {
+      let row = queryStats.insertRow();
+      let sql = document.createElement("code");
+      sql.textContent = stats.sql;
+      row.insertCell().appendChild(sql);
+      [stats.count, stats.errors, stats.totalMillis.toFixed(1), stats.averageMillis.toFixed(3), stats.p95Millis,
+          stats.maxMillis.toFixed(3), stats.rows, stats.connectionWaitMillis.toFixed(1)].forEach(function(value) {
+        row.insertCell().appendChild(document.createTextNode(value));
+      });
+    });
+  });
+}
+
+function clearQueryStats() {
+  let args = new Map();
+  addLoginToken(args);
+  handleAsyncJsonRequest("/api/database/clearQueries", encodeMap(args), function(res) {
+    if (!res.success) {
+      displayError(res.message);
+    } else {
+      updateQueryStats();
+    }
+  }, "post");
+}
+
+// results are streamed back one per line, so they're passed to onMatch as soon as they arrive
+function searchLogs(args, onMatch, onDone) {
+  addLoginToken(args);
+  let req = new XMLHttpRequest();
+  let parsed = 0;
+  let parseLines = function(text) {
+    let end;
+    while ((end = text.indexOf("\n", parsed)) !== -1) {
+      let line = text.substring(parsed, end);
+      parsed = end + 1;
+      if (line.length === 0) {
+        continue;
+      }
+      let res = JSON.parse(line);
+      if (res.done || res.success === false) {
+        onDone(res);
+      } else {
+        onMatch(res);
+      }
+    }
+  };
+  req.open("get", "/api/log/search?" + encodeMap(args));
+  req.onprogress = function() {
+    parseLines(this.responseText);
+  };
+  req.onload = function() {
+    let contentType = req.getResponseHeader("Content-Type");
+    if (contentType === "application/json") {
+      onDone(JSON.parse(this.responseText));
+    } else {
+      parseLines(this.responseText + "\n");
+    }
+  };
+  req.send();
+  return req;
+}
+
+function clearPageExport() {
+  let args = new Map();
+  addLoginToken(args);
+  handleAsyncJsonRequest("/api/page/clearExport", encodeMap(args), function(res) {
+    if (!res.success) {
+      displayError(res.message);
+    }
+  }, "post");
+}
@@ -0,0 +1,463 @@
+package me.whizvox.wsite.database;
+
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.exception.DataAccessException;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.DriverManager;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static me.whizvox.wsite.generated.tables.Logins.LOGINS;
+import static me.whizvox.wsite.generated.tables.Pages.PAGES;
+import static me.whizvox.wsite.generated.tables.Users.USERS;
+import static org.junit.Assert.*;
+
+/**
+ * Runs every test against each database wsite supports. PostgreSQL is only tested when given a database to use through
+ * the <code>wsite.test.postgresUrl</code> property (and <code>wsite.test.postgresUser</code> and
+ * <code>wsite.test.postgresPassword</code> if it needs them). Its tables are dropped before every test, so it shouldn't
+ * be one with anything in it worth keeping.
+ */
+@RunWith(Parameterized.class)
+public class RepositoryTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RepositoryTest.class);
+
+  // every H2 test gets a database of its own, it's kept in memory until the test is done with it
+  private static final AtomicInteger H2_DATABASES = new AtomicInteger(0);
+
+  // passwords are stored as hashes in hex, this is as long as one with the default 256 bit key and 8 byte salt
+  private static final String PASSWORD = String.join("", Collections.nCopies(5, "0123456789abcdef"));
+  // and with the largest key and salt a HashManager allows, 1024 bits and 64 bytes
+  private static final String LONGEST_PASSWORD = String.join("", Collections.nCopies(24, "0123456789abcdef"));
+
+  @Parameterized.Parameters(name = "{0}")
+  public static List<Object[]> backends() {
+    List<Object[]> backends = new ArrayList<>();
+    backends.add(new Object[] {"sqlite"});
+    backends.add(new Object[] {"h2"});
+    if (System.getProperty("wsite.test.postgresUrl") != null) {
+      backends.add(new Object[] {"postgres"});
+    }
+    return backends;
+  }
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final String backend;
+  private Database database;
+  private Migrator migrator;
+  private CachingUserRepository userRepo;
+  private CachingPageRepository pageRepo;
+  private LoginRepository loginRepo;
+
+  public RepositoryTest(String backend) {
+    this.backend = backend;
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    database = open();
+    migrator = new Migrator(database, LOGGER, 100);
+    userRepo = new CachingUserRepository(database, 100);
+    pageRepo = new CachingPageRepository(database, 100);
+    loginRepo = new LoginRepository(database);
+    if (backend.equals("postgres")) {
+      // left behind by the last run
+      database.write(db -> db.execute("drop table if exists users, pages, logins, schema_version"));
+    }
+  }
+
+  @After
+  public void tearDown() {
+    if (backend.equals("h2")) {
+      database.write(db -> db.execute("drop all objects"));
+    }
+    database.close();
+  }
+
+  private Database open() throws Exception {
+    switch (backend) {
+      case "sqlite": {
+        String url = "jdbc:sqlite:" + folder.newFile("wsite.db").getAbsolutePath();
+        return Database.open(url, SQLDialect.SQLITE, () -> DriverManager.getConnection(url), 1, 4, 5000,
+            new Database.SqliteSettings(), null);
+      }
+      case "h2": {
+        String url = "jdbc:h2:mem:wsite" + H2_DATABASES.incrementAndGet() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+        return Database.open(url, SQLDialect.H2, () -> DriverManager.getConnection(url), 1, 4, 5000, null, null);
+      }
+      case "postgres": {
+        String url = System.getProperty("wsite.test.postgresUrl");
+        String user = System.getProperty("wsite.test.postgresUser", "");
+        String password = System.getProperty("wsite.test.postgresPassword", "");
+        return Database.open(url, SQLDialect.POSTGRES, () -> DriverManager.getConnection(url, user, password), 1, 4,
+            5000, null, null);
+      }
+      default:
+        throw new IllegalArgumentException("Unknown backend: " + backend);
+    }
+  }
+
+  private void createTables() {
+    userRepo.create();
+    pageRepo.create();
+    loginRepo.create();
+    migrator.migrate(Migrations.ALL);
+  }
+
+  private boolean indexExists(String name) {
+    DSLContext db = database.getReadContext();
+    switch (database.getDialect().family()) {
+      case SQLITE:
+        return db.fetchExists(DSL.selectOne().from("sqlite_master").where("type = 'index' and name = ?", name));
+      case H2:
+        return db.fetchExists(DSL.selectOne().from("information_schema.indexes").where("lower(index_name) = ?", name));
+      default:
+        return db.fetchExists(DSL.selectOne().from("pg_indexes").where("indexname = ?", name));
+    }
+  }
+
+  private static User newUser(String username, String emailAddress) {
+    User user = new User();
+    user.id = UUID.randomUUID();
+    user.username = username;
+    user.emailAddress = emailAddress;
+    user.password = PASSWORD;
+    user.whenCreated = Instant.now();
+    return user;
+  }
+
+  private static Page newPage(String path, Instant published) {
+    return new Page(path, "Title of " + path, "Contents of " + path, Page.Syntax.PLAIN, published, null);
+  }
+
+  @Test
+  public void migratesToLatestVersion() {
+    createTables();
+    int latest = Migrations.ALL.stream().mapToInt(migration -> migration.version).max().orElse(0);
+    assertEquals(latest, migrator.getVersion());
+    assertEquals(0, migrator.migrate(Migrations.ALL));
+  }
+
+  @Test
+  public void buildsUniqueIndexesInPlaceOfLowerOnes() {
+    createTables();
+    for (String name : Arrays.asList("pages_path_lower", "users_username_lower", "users_email_address_lower")) {
+      assertFalse(name, indexExists(name));
+      assertTrue(name, indexExists(name + "_unique"));
+    }
+  }
+
+  @Test
+  public void skipsExpressionIndexesOnlyOnH2() {
+    createTables();
+    migrator.createIndex("pages_title_lower", PAGES, JooqRepository.ignoreCase(PAGES.TITLE));
+    assertEquals(database.getDialect().family() != SQLDialect.H2, indexExists("pages_title_lower"));
+    assertEquals(database.getDialect().family() != SQLDialect.H2, migrator.canIndexExpressions());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void uniqueIndexRefusesExistingDuplicates() {
+    createTables();
+    migrator.dropIndex("users_username_lower_unique");
+    userRepo.insert(newUser("alice", "alice@example.com"));
+    userRepo.insert(newUser("alice", "other@example.com"));
+    migrator.createUniqueIndex("users_username_lower_unique", USERS, USERS.USERNAME);
+  }
+
+  @Test
+  public void storesPasswordHashesOfEverySize() {
+    createTables();
+    User alice = newUser("alice", "alice@example.com");
+    alice.password = LONGEST_PASSWORD;
+    userRepo.insert(alice);
+    userRepo.insert(newUser("bob", "bob@example.com"));
+    assertEquals(LONGEST_PASSWORD, userRepo.selectFromId(alice.id).password);
+    // not padded out to the longest size either
+    assertEquals(PASSWORD, userRepo.selectFromUsername("bob").password);
+  }
+
+  @Test
+  public void widensPasswordsOfOlderTables() {
+    createTables();
+    // SQLite can't change a column's type, and didn't need it to be changed in the first place
+    if (database.getDialect().family() != SQLDialect.SQLITE) {
+      database.write(db -> db.alterTable(USERS)
+          .alter(USERS.PASSWORD)
+          .set(SQLDataType.CHAR(40))
+          .execute());
+    }
+    database.write(db -> db.deleteFrom(DSL.table(DSL.name("schema_version")))
+        .where(DSL.field(DSL.name("version")).equal(6))
+        .execute());
+    assertEquals(1, migrator.migrate(Migrations.ALL));
+    User alice = newUser("alice", "alice@example.com");
+    alice.password = LONGEST_PASSWORD;
+    userRepo.insert(alice);
+    assertEquals(LONGEST_PASSWORD, userRepo.selectFromId(alice.id).password);
+    try {
+      database.write(db -> db.insertInto(USERS)
+          .set(USERS.ID, UUID.randomUUID().toString())
+          .set(USERS.USERNAME, "bob")
+          .set(USERS.EMAIL_ADDRESS, "bob@example.com")
+          .set(USERS.PASSWORD, (String) null)
+          .set(USERS.WHEN_CREATED, Timestamp.from(Instant.now()))
+          .execute());
+      fail("Expected a password to still be required");
+    } catch (DataAccessException ignored) {
+    }
+  }
+
+  // upper and lower case letters outside of ASCII, some of which only some databases fold, or fold differently
+  private static final List<String> NON_ASCII = Arrays.asList("\u00dcber", "\u00fcBER", "\u03a3\u03c3\u03c2",
+      "\u212a", "\u0130", "i\u0307", "\u0131", "\u212b\u00c5", "\u1e9e", "\u00df", "\u0178");
+
+  @Test
+  public void foldsCaseLikeTheDatabase() {
+    createTables();
+    String value = "MiXeD-Case_09/Path";
+    assertEquals(lower(value), JooqRepository.foldCase(value));
+    // not every database folds anything other than ASCII
+    assertEquals("\u00dcn\u00efcode", JooqRepository.foldCase("\u00dcn\u00efcode"));
+    assertNull(JooqRepository.foldCase(null));
+    for (String nonAscii : NON_ASCII) {
+      assertEquals(nonAscii, JooqRepository.foldCaseLoosely(nonAscii), JooqRepository.foldCaseLoosely(lower(nonAscii)));
+    }
+  }
+
+  private String lower(String value) {
+    return database.getReadContext().select(DSL.lower(value)).fetchOne().value1();
+  }
+
+  @Test
+  public void looseFoldingMatchesEveryLookup() {
+    createTables();
+    for (String path : NON_ASCII) {
+      if (pageRepo.selectFromPath(path) == null) {
+        pageRepo.insert(newPage(path, Instant.now()));
+      }
+    }
+    // any path the database finds a page for has to fold loosely into the same key as that page's own path, or the
+    // page would be turned away before it's even looked up
+    for (String path : NON_ASCII) {
+      for (String lookup : Arrays.asList(path, path.toLowerCase(Locale.ROOT), path.toUpperCase(Locale.ROOT))) {
+        Page page = pageRepo.selectFromPath(lookup);
+        if (page != null) {
+          assertEquals(lookup, JooqRepository.foldCaseLoosely(page.path), JooqRepository.foldCaseLoosely(lookup));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void looksUpIgnoringCase() {
+    createTables();
+    User user = newUser("Alice", "Alice@Example.com");
+    assertTrue(userRepo.insert(user));
+    assertEquals(user.id, userRepo.selectFromUsername("aLICE").id);
+    assertEquals(user.id, userRepo.selectFromEmailAddress("alice@EXAMPLE.COM").id);
+    assertNull(userRepo.selectFromUsername("bob"));
+    assertTrue(pageRepo.insert(newPage("About/Team", Instant.now())));
+    assertEquals("About/Team", pageRepo.selectFromPath("about/team").path);
+    assertTrue(pageRepo.delete("ABOUT/TEAM"));
+    assertNull(pageRepo.selectFromPath("About/Team"));
+  }
+
+  @Test
+  public void rejectsDuplicateKeys() {
+    createTables();
+    userRepo.insert(newUser("alice", "alice@example.com"));
+    pageRepo.insert(newPage("about", Instant.now()));
+    assertDuplicate(() -> userRepo.insert(newUser("alice", "other@example.com")));
+    assertDuplicate(() -> userRepo.insert(newUser("bob", "alice@example.com")));
+    assertDuplicate(() -> pageRepo.insert(newPage("about", Instant.now())));
+    // H2 only catches the exact same value, see Migrations
+    if (migrator.canIndexExpressions()) {
+      assertDuplicate(() -> userRepo.insert(newUser("ALICE", "other@example.com")));
+      assertDuplicate(() -> pageRepo.insert(newPage("About", Instant.now())));
+    }
+    assertEquals(1, userRepo.fetchCount());
+    assertEquals(1, pageRepo.fetchCount());
+  }
+
+  private static void assertDuplicate(Runnable write) {
+    try {
+      write.run();
+      fail("Expected a DuplicateKeyException");
+    } catch (DuplicateKeyException ignored) {
+    }
+  }
+
+  @Test
+  public void patchesOnlyGivenFields() {
+    createTables();
+    User alice = newUser("alice", "alice@example.com");
+    userRepo.insert(alice);
+    UserRepository.Patch patch = userRepo.patch(alice.id, "alicia", null, null, true);
+    assertTrue(patch.updated);
+    assertFalse(patch.usernameConflict || patch.emailAddressConflict);
+    User patched = userRepo.selectFromId(alice.id);
+    assertEquals("alicia", patched.username);
+    assertEquals("alice@example.com", patched.emailAddress);
+    assertEquals(PASSWORD, patched.password);
+    assertTrue(patched.operator);
+    assertNull(userRepo.selectFromUsername("alice"));
+    assertFalse(userRepo.patch(UUID.randomUUID(), null, null, null, false).updated);
+  }
+
+  @Test
+  public void patchReportsEachConflict() {
+    createTables();
+    User alice = newUser("alice", "alice@example.com");
+    User bob = newUser("bob", "bob@example.com");
+    userRepo.insert(alice);
+    userRepo.insert(bob);
+    UserRepository.Patch patch = userRepo.patch(bob.id, "ALICE", "bob2@example.com", null, null);
+    assertTrue(patch.usernameConflict);
+    assertFalse(patch.emailAddressConflict);
+    assertFalse(patch.updated);
+    patch = userRepo.patch(bob.id, null, "Alice@Example.com", null, null);
+    assertFalse(patch.usernameConflict);
+    assertTrue(patch.emailAddressConflict);
+    patch = userRepo.patch(bob.id, "alice", "alice@example.com", null, null);
+    assertTrue(patch.usernameConflict && patch.emailAddressConflict);
+    assertEquals("bob@example.com", userRepo.selectFromId(bob.id).emailAddress);
+    // a user's own username isn't a conflict, so its case can be changed
+    assertTrue(userRepo.patch(bob.id, "Bob", null, null, null).updated);
+  }
+
+  @Test
+  public void renamesPages() {
+    createTables();
+    pageRepo.insert(newPage("old", Instant.now()));
+    pageRepo.insert(newPage("taken", Instant.now()));
+    // cached under the old path
+    assertNotNull(pageRepo.selectFromPath("old"));
+    Page page = newPage("new", Instant.now());
+    page.contents = "Changed";
+    assertTrue(pageRepo.rename("OLD", page));
+    assertNull(pageRepo.selectFromPath("old"));
+    assertEquals("Changed", pageRepo.selectFromPath("new").contents);
+    assertEquals(2, pageRepo.fetchCount());
+    assertDuplicate(() -> pageRepo.rename("new", newPage("taken", Instant.now())));
+    assertEquals("Changed", pageRepo.selectFromPath("new").contents);
+    assertFalse(pageRepo.rename("missing", newPage("elsewhere", Instant.now())));
+  }
+
+  @Test
+  public void pagesThroughUsers() {
+    createTables();
+    List<String> usernames = new ArrayList<>();
+    for (int i = 0; i < 25; i++) {
+      String username = String.format("user%02d", i);
+      usernames.add(username);
+      userRepo.insert(newUser(username, username + "@example.com"));
+    }
+    for (boolean descending : new boolean[] {false, true}) {
+      List<String> expected = new ArrayList<>(usernames);
+      if (descending) {
+        Collections.reverse(expected);
+      }
+      List<List<Keyset.Row<User>>> pages = new ArrayList<>();
+      String after = null;
+      List<Keyset.Row<User>> page;
+      do {
+        page = userRepo.selectAll(10, 0, after, null, UserRepository.OrderingScheme.USERNAME, descending);
+        pages.add(page);
+        after = page.isEmpty() ? null : page.get(page.size() - 1).cursor;
+      } while (page.size() == 10);
+      assertEquals(expected, pages.stream()
+          .flatMap(List::stream)
+          .map(row -> row.value.username)
+          .collect(Collectors.toList()));
+      // an offset gets the same page as following the cursors does
+      assertEquals(usernames(pages.get(2)),
+          usernames(userRepo.selectAll(10, 2, null, null, UserRepository.OrderingScheme.USERNAME, descending)));
+      // and paging backwards from the start of a page gets the one before it
+      assertEquals(usernames(pages.get(1)), usernames(userRepo.selectAll(10, 0, null, pages.get(2).get(0).cursor,
+          UserRepository.OrderingScheme.USERNAME, descending)));
+    }
+  }
+
+  @Test
+  public void pagesThroughTiesInOrder() {
+    createTables();
+    // every page is published at the same time, so only the path tells them apart
+    Instant published = Instant.parse("2019-01-01T00:00:00Z");
+    List<String> paths = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      String path = String.format("page%02d", i);
+      paths.add(path);
+      pageRepo.insert(newPage(path, published));
+    }
+    List<String> listed = new ArrayList<>();
+    String after = null;
+    List<PageRepository.PageSummary> page;
+    do {
+      page = pageRepo.selectList(5, 0, after, null, PageRepository.OrderingScheme.PUBLISHED, false);
+      page.forEach(summary -> listed.add(summary.path));
+      after = page.isEmpty() ? null : page.get(page.size() - 1).cursor;
+    } while (page.size() == 5);
+    assertEquals(paths, listed);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMalformedCursors() {
+    createTables();
+    userRepo.selectAll(10, 0, "not a cursor", null, UserRepository.OrderingScheme.USERNAME, false);
+  }
+
+  private static List<String> usernames(List<Keyset.Row<User>> rows) {
+    return rows.stream().map(row -> row.value.username).collect(Collectors.toList());
+  }
+
+  @Test
+  public void addsMissingColumns() {
+    // a users table from before the operator column was added, with a user in it
+    database.write(db -> db.createTable(USERS)
+        .columns(USERS.ID, USERS.USERNAME, USERS.EMAIL_ADDRESS, USERS.PASSWORD, USERS.WHEN_CREATED)
+        .execute());
+    UUID id = UUID.randomUUID();
+    database.write(db -> db.insertInto(USERS, USERS.ID, USERS.USERNAME, USERS.EMAIL_ADDRESS, USERS.PASSWORD,
+        USERS.WHEN_CREATED)
+        .values(id.toString(), "alice", "alice@example.com", PASSWORD, new Timestamp(0))
+        .execute());
+    createTables();
+    User alice = userRepo.selectFromId(id);
+    assertEquals("alice", alice.username);
+    assertFalse(alice.operator);
+    User bob = newUser("bob", "bob@example.com");
+    bob.operator = true;
+    assertTrue(userRepo.insert(bob));
+    assertTrue(userRepo.selectFromId(bob.id).operator);
+    // and nothing is added to a table that's already up to date
+    loginRepo.create();
+    assertEquals(LOGINS.fields().length, database.getReadContext().select(DSL.asterisk())
+        .from(DSL.table(LOGINS.getQualifiedName()))
+        .where(DSL.falseCondition())
+        .fetch().fields().length);
+  }
+
+}